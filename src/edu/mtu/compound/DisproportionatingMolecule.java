@@ -1,7 +1,7 @@
 package edu.mtu.compound;
 
+import edu.mtu.reaction.CompiledReactions;
 import edu.mtu.reaction.Reaction;
-import edu.mtu.reaction.BasicReaction;
 
 /**
  * This class represents a disproportionating chemical entity and is used to support
@@ -9,7 +9,11 @@ import edu.mtu.reaction.BasicReaction;
  */
 public class DisproportionatingMolecule extends Molecule {
 
-	private BasicReaction[] reactions;
+	// The reactions, shared by every molecule of the pair
+	private CompiledReactions reactions;
+	
+	// The bit for each reaction that has already taken place
+	private long consumed;
 	
 	/**
 	 * Constructor.
@@ -22,44 +26,55 @@ public class DisproportionatingMolecule extends Molecule {
 	/**
 	 * Create a new disproportionating species from the species and reactions provided. 
 	 */
-	public static DisproportionatingMolecule create(Molecule species, BasicReaction[] reactions) {
+	public static DisproportionatingMolecule create(Molecule species, CompiledReactions reactions) {
 		DisproportionatingMolecule entity = new DisproportionatingMolecule(species.getFormula());
-		entity.reactions = reactions.clone();
+		entity.reactions = reactions;
 		return entity;
 	}
 	
 	/**
 	 * Create a new disproportionating species from the species and reactions provided.
 	 */
-	public static DisproportionatingMolecule create(Molecule one, Molecule two, BasicReaction[] reactions) { 
+	public static DisproportionatingMolecule create(Molecule one, Molecule two, CompiledReactions reactions) { 
 		if (two == null) {
 			return create(one, reactions);
 		}
 		
 		DisproportionatingMolecule entity = new DisproportionatingMolecule(one.getFormula() + " + " + two.getFormula());
-		entity.reactions = reactions.clone();
+		entity.reactions = reactions;
 		return entity;		
 	}
 	
 	@Override
 	public void doAction(int step) {
 		// Check for any valid reactions
-		int size = reactions.length;
-		for (int ndx = 0; ndx < size; ndx++) {
-			if (reactions[ndx] != null) {
-				Reaction.getInstance().react(this);
-				return;
-			}
+		if (consumed != reactions.branches) {
+			Reaction.getInstance().react(this);
+			return;
 		}
 		
 		// If we are here, all of the reactions are gone
 		dispose();
 	}
+	
+	/**
+	 * Note that the reactions indicated by the bits have taken place.
+	 */
+	public void consume(long branches) {
+		consumed |= branches;
+	}
+	
+	/**
+	 * Get the bits of the reactions that have taken place.
+	 */
+	public long getConsumed() {
+		return consumed;
+	}
 			
 	/**
 	 * Get the reactions for this entity.
 	 */
-	public BasicReaction[] getReactions() {
+	public CompiledReactions getReactions() {
 		return reactions;
 	}
 }
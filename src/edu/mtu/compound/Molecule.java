@@ -1,35 +1,28 @@
 package edu.mtu.compound;
 
-import org.apache.commons.math3.geometry.euclidean.threed.SphericalCoordinates;
-import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+import org.apache.commons.math3.util.FastMath;
 
 import edu.mtu.primitives.Entity;
-import edu.mtu.primitives.Sparse3DLattice;
+import edu.mtu.primitives.EntityStore;
+import edu.mtu.primitives.SpatialIndex;
+import edu.mtu.reaction.CompiledReactions;
 import edu.mtu.reaction.MoleculeDescription;
 import edu.mtu.reaction.Reaction;
 import edu.mtu.reaction.ReactionRegistry;
 import edu.mtu.reactor.Reactor;
 import edu.mtu.simulation.ChemSim;
-import edu.mtu.simulation.SimulationProperties;
 import edu.mtu.simulation.schedule.Steppable;
-import edu.mtu.util.FnvHash;
 import it.unimi.dsi.util.XoRoShiRo128PlusRandom;
 
 public class Molecule extends Steppable implements Entity {
 
+	// Description of the species, shared by all molecules of it, note that this
+	// is also used to identify the molecule and find reactions
 	private MoleculeDescription md;
 	
-	// Pointer to the reactor we are working in
-	protected Sparse3DLattice grid;
-	
-	// Dimensions of the grid
-	private int dx, dy, dz;
-	
-	// Used to identify the molecule and find reactions
-	private Integer formulaHash;
-	private String formula;
-	
-	private int step;
+	// The id of the molecule in the reactor, the location and last step acted 
+	// upon are kept in the lattice's store
+	private int id = EntityStore.NONE;
 	
 	/**
 	 * Constructor.
@@ -38,25 +31,47 @@ public class Molecule extends Steppable implements Entity {
 		this(formula, true);
 	}
 	
+	/**
+	 * Constructor, for a species that has already been looked up.
+	 */
+	public Molecule(MoleculeDescription md) {
+		this.md = md;
+	}
+	
 	/**
 	 * Constructor, note if pointers should be cached or not.
 	 */
 	public Molecule(String formula, boolean cache) {
-		this.formula = formula;
-		formulaHash = FnvHash.fnv1a32(formula);
-		
 		if (cache) {
 			md = ReactionRegistry.getInstance().getMoleculeDescription(formula);
-			dx = Reactor.getInstance().dimensions[0];
-			dy = Reactor.getInstance().dimensions[1];
-			dz = Reactor.getInstance().dimensions[2];
-			grid = Reactor.getInstance().grid;
+		}
+		
+		// Species without reactions (e.g., disproportionating pairs) still need to be identified
+		if (md == null) {
+			md = new MoleculeDescription(formula, ReactionRegistry.getInstance().getSpeciesId(formula));
+		}
+	}
+			
+	/**
+	 * Prepare the molecule for reuse as the given species, this is only used by the pool.
+	 */
+	void reset(MoleculeDescription md) {
+		this.md = md;
+		id = EntityStore.NONE;
+		reactivate();
+	}
+	
+	@Override
+	public void dropped() {
+		// Only plain molecules are recycled, the rest carry state of their own
+		if (getClass() == Molecule.class) {
+			MoleculePool.getInstance().recycle(this);
 		}
 	}
 			
 	@Override
 	public void doAction(int step) {
-		this.step = step;
+		Reactor.getInstance().grid.getStore().step[id] = step;
 		if (react()) {
 			dispose();
 		} else {
@@ -76,9 +91,9 @@ public class Molecule extends Steppable implements Entity {
 	 * 
 	 * @param update True if the count should be decremented, false otherwise.
 	 */
-	private void dispose(boolean update) {
+	public void dispose(boolean update) {
 		if (update) {
-			ChemSim.getTracker().update(formula, -1);
+			ChemSim.getTracker().update(md.speciesId, -1);
 		}
 		Reactor.getInstance().remove(this);
 		ChemSim.getSchedule().remove(this);
@@ -88,15 +103,27 @@ public class Molecule extends Steppable implements Entity {
 	 * Get the formula of this molecule.
 	 */
 	public String getFormula() {
-		return formula;
+		return md.formula;
+	}
+	
+	public double[][] getAcceptance() {
+		return md.acceptance;
+	}
+	
+	public CompiledReactions[] getBimolecularReactions() {
+		return md.reactions;
 	}
 	
 	public int[] getInteractionRadii() {
 		return md.interactionRadius;
 	}
 	
-	public Integer[] getReactantHashes() {
-		return md.reactsWithHash;
+	public long[] getPartnerMask() {
+		return md.partnerMask;
+	}
+	
+	public int[] getReactantIds() {
+		return md.reactsWith;
 	}
 	
 	public boolean hasBimoleculear() {
@@ -120,16 +147,19 @@ public class Molecule extends Steppable implements Entity {
 	}
 	
 	public boolean isFree(int step) {
-		return (this.step != step);
+		return (Reactor.getInstance().grid.getStore().step[id] != step);
 	}
 		
 	/**
-	 * Calculate the new location for this molecule.
+	 * Calculate the new location for this molecule. This is called for every molecule
+	 * on every time step, so the location is updated in the store without allocating.
 	 */
 	protected void move() {
 
-		// Get our current location use our own copy
-		int[] location = grid.getObjectLocation(this).clone();
+		// Note the reactor and the store that holds our location
+		Reactor reactor = Reactor.getInstance();
+		SpatialIndex grid = reactor.grid;
+		EntityStore store = grid.getStore();
 			
 		// Find our speed with a bit of noise
 		XoRoShiRo128PlusRandom random = (XoRoShiRo128PlusRandom)ChemSim.getInstance().getRandom();
@@ -139,28 +169,31 @@ public class Molecule extends Steppable implements Entity {
 		double theta = -Math.PI + 2 * Math.PI * random.nextDoubleFast();
 		double phi = -Math.PI + 2 * Math.PI * random.nextDoubleFast();
 		
-		// Convert the coordinates
-		SphericalCoordinates coords = new SphericalCoordinates(speed, theta, phi);
-		Vector3D sphere = coords.getCartesian();
-		
-		// Apply the vector with the dt adjustment
-		double dt = SimulationProperties.getInstance().getDeltaT();
-		location[0] += (int)(dt * sphere.getX());
-		location[1] += (int)(dt * sphere.getY());
-		location[2] += (int)(dt * sphere.getZ());
-				
-		// Adjust the location as needed so we stay in the bounds of the container
-		location[0] = (location[0] > dx) ? dx : location[0];
-		location[0] = (location[0] < 0) ? 0 : location[0];
+		// Convert the coordinates, this is the same conversion SphericalCoordinates 
+		// makes, done inline so the steps are unchanged but nothing is allocated
+		double sinPhi = FastMath.sin(phi);
+		double vx = speed * FastMath.cos(theta) * sinPhi;
+		double vy = speed * FastMath.sin(theta) * sinPhi;
+		double vz = speed * FastMath.cos(phi);
 		
-		location[1] = (location[1] > dy) ? dy : location[1];
-		location[1] = (location[1] < 0) ? 0 : location[1];
-		
-		location[2] = (location[2] > dz) ? dz : location[2];
-		location[2] = (location[2] < 0) ? 0 : location[2];
+		// Apply the vector with the dt adjustment, adjusting the location as needed 
+		// so we stay in the bounds of the container
+		double dt = reactor.deltaT;
+		int[] dimensions = reactor.dimensions;
+		int x = clamp(store.x[id] + (int)(dt * vx), dimensions[0]);
+		int y = clamp(store.y[id] + (int)(dt * vy), dimensions[1]);
+		int z = clamp(store.z[id] + (int)(dt * vz), dimensions[2]);
 		
 		// Set the new location
-		grid.setObjectLocation(this, location);
+		grid.setObjectLocation(id, x, y, z);
+	}
+	
+	/**
+	 * Clamp the value to the range [0, limit].
+	 */
+	private static int clamp(int value, int limit) {
+		value = (value > limit) ? limit : value;
+		return (value < 0) ? 0 : value;
 	}
 
 	/**
@@ -176,23 +209,33 @@ public class Molecule extends Steppable implements Entity {
 	 * Check to see if the two molecules are the same chemical entity.
 	 */
 	public boolean sameEntity(Molecule moleclue) {
-		return (formulaHash == moleclue.formulaHash);
+		return (md.speciesId == moleclue.md.speciesId);
 	}
 	
 	/**
 	 * Check to see if the two molecules are the same chemical entity.
 	 */
-	public boolean sameEntity(int formulaHash) {
-		return (this.formulaHash == formulaHash);
+	public boolean sameEntity(int speciesId) {
+		return (md.speciesId == speciesId);
 	}
 
 	@Override
-	public Integer getEntityTypeTag() {
-		return formulaHash;
+	public int getEntityTypeTag() {
+		return md.speciesId;
+	}
+	
+	@Override
+	public int getEntityId() {
+		return id;
+	}
+	
+	@Override
+	public void setEntityId(int id) {
+		this.id = id;
 	}
 	
 	@Override
 	public String toString() {
-		return formula;
+		return md.formula;
 	}
 }
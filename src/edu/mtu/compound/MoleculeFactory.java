@@ -1,8 +1,7 @@
 package edu.mtu.compound;
 
-import java.util.List;
-
-import edu.mtu.reaction.BasicReaction;
+import edu.mtu.reaction.CompiledReactions;
+import edu.mtu.reaction.ProductPlan;
 import edu.mtu.reaction.ReactionRegistry;
 import edu.mtu.reactor.Reactor;
 import edu.mtu.simulation.ChemSim;
@@ -19,22 +18,88 @@ public class MoleculeFactory {
 		// First update out count
 		ChemSim.getTracker().update(formula, 1);
 		
-		// Return if this is a dissolved molecule
-		for (DissolvedMolecule moleclue : ReactionRegistry.DissolvedMoleclues) {
-			if (moleclue.getFormula().equals(formula)) {
-				return;
-			}
-		}
-		
-		// Return if it doesn't have any reactants
-		if (!ReactionRegistry.getInstance().hasReactants(formula)) {
+		// Return if the molecule is only counted
+		if (!isAgent(formula)) {
 			return;
 		}
 		
 		// Create and schedule the molecule
-		Molecule entity = new Molecule(formula);
+		Molecule entity = MoleculePool.getInstance().get(ReactionRegistry.getInstance().getMoleculeDescription(formula));
 		ChemSim.getSchedule().insert(entity);
-		Reactor.getInstance().insert(entity, location.clone());
+		Reactor.getInstance().insert(entity, location);
+	}
+	
+	/**
+	 * Create the product of the plan and ensure it is scheduled (or not) appropriately.
+	 * 
+	 * @param plan the compiled products.
+	 * @param index of the product to be created.
+	 * @param location of the molecule to be created.
+	 */
+	public static void create(ProductPlan plan, int index, final int[] location) {
+		ChemSim.getTracker().update(plan.speciesIds[index], 1);
+		if (plan.kinds[index] != ProductPlan.AGENT) {
+			return;
+		}
+		Molecule entity = MoleculePool.getInstance().get(plan.descriptions[index]);
+		ChemSim.getSchedule().insert(entity);
+		Reactor.getInstance().insert(entity, location);
+	}
+	
+	/**
+	 * Create all of the products of the plan.
+	 * 
+	 * @param plan the compiled products.
+	 * @param location of the molecules to be created.
+	 */
+	public static void create(ProductPlan plan, final int[] location) {
+		int size = plan.kinds.length;
+		for (int ndx = 0; ndx < size; ndx++) {
+			create(plan, ndx, location);
+		}
+	}
+	
+	/**
+	 * Create the given number of molecules of the type at random locations, the count
+	 * is updated once for all of them.
+	 * 
+	 * @param formula of the molecules to be created.
+	 * @param count of the molecules to be created.
+	 */
+	public static void createN(String formula, int count) {
+		ChemSim.getTracker().update(formula, count);
+		if (isAgent(formula)) {
+			Reactor.getInstance().insertN(formula, count);
+		}
+	}
+	
+	/**
+	 * Create the given number of the product of the plan at the locations, the count is 
+	 * updated once for all of them.
+	 * 
+	 * @param plan the compiled products.
+	 * @param index of the product to be created.
+	 * @param locations of the molecules as consecutive x, y, z triples.
+	 * @param count of the molecules to be created.
+	 */
+	public static void createN(ProductPlan plan, int index, final int[] locations, int count) {
+		ChemSim.getTracker().update(plan.speciesIds[index], count);
+		if (plan.kinds[index] == ProductPlan.AGENT) {
+			Reactor.getInstance().insertN(plan.descriptions[index], locations, count);
+		}
+	}
+	
+	/**
+	 * Returns true if molecules of the type are placed in the reactor, false if they are 
+	 * dissolved or don't have any reactants and so are only counted.
+	 */
+	public static boolean isAgent(String formula) {
+		for (DissolvedMolecule moleclue : ReactionRegistry.DissolvedMoleclues) {
+			if (moleclue.getFormula().equals(formula)) {
+				return false;
+			}
+		}
+		return ReactionRegistry.getInstance().hasReactants(formula);
 	}
 	
 	/**
@@ -52,16 +117,12 @@ public class MoleculeFactory {
 	/**
 	 * Create a disproportionating molecule and ensure it is add to the schedule.
 	 * 
-	 * @param reactions associated with the molecule.
+	 * @param rd the reactions associated with the molecule, these are shared by the molecules.
 	 * @param location of the molecule.
 	 */
-	public static void create(Molecule one, Molecule two, List<BasicReaction> reactions, final int[] location) {
-		// Create the list of reactions
-		BasicReaction[] rd = new BasicReaction[reactions.size()];
-		rd = reactions.toArray(rd);
-		
+	public static void create(Molecule one, Molecule two, CompiledReactions rd, final int[] location) {
 		// Prepare the canonical order based upon the reactions
-		if (!one.getFormula().equals(rd[0].getReactants()[0])) {
+		if (!one.getFormula().equals(rd.reactions[0].getReactants()[0])) {
 			Molecule temp = one;
 			one = two;
 			two = temp;
@@ -70,7 +131,7 @@ public class MoleculeFactory {
 		// Create the entity
 		Molecule entity = DisproportionatingMolecule.create(one, two, rd);
 		ChemSim.getSchedule().insert(entity);
-		Reactor.getInstance().insert(entity, location.clone());
-		ChemSim.getTracker().update(entity.getFormula(), 1);
+		Reactor.getInstance().insert(entity, location);
+		ChemSim.getTracker().update(entity.getEntityTypeTag(), 1);
 	}
 }
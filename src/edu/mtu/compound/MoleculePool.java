@@ -0,0 +1,92 @@
+package edu.mtu.compound;
+
+import edu.mtu.reaction.MoleculeDescription;
+
+/**
+ * Pool of molecules that have been disposed of and dropped by the schedule, since the
+ * radicals are short lived this lets the factory reuse them rather than allocating a
+ * new molecule for every product. A molecule is only recycled once the schedule has
+ * dropped it, at which point nothing else refers to it, so the simulation results are
+ * the same with or without the pool.
+ */
+public class MoleculePool {
+
+	// The most molecules that will be held for reuse
+	public final static int CAPACITY = 1 << 20;
+
+	private static MoleculePool instance = new MoleculePool();
+
+	// The molecules available for reuse
+	private Molecule[] free = new Molecule[1024];
+	private int count;
+
+	// Note the requests and how many were served from the pool
+	private long requests;
+	private long hits;
+
+	/**
+	 * Singleton constructor.
+	 */
+	private MoleculePool() { }
+
+	/**
+	 * Get the instance of the singleton.
+	 */
+	public static MoleculePool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Empty the pool and reset the statistics.
+	 */
+	public void clear() {
+		free = new Molecule[1024];
+		count = 0;
+		requests = 0;
+		hits = 0;
+	}
+
+	/**
+	 * Get a molecule of the given species, reusing one if possible.
+	 */
+	public Molecule get(MoleculeDescription md) {
+		requests++;
+		if (count == 0) {
+			return new Molecule(md);
+		}
+		hits++;
+		Molecule molecule = free[--count];
+		free[count] = null;
+		molecule.reset(md);
+		return molecule;
+	}
+
+	/**
+	 * Get the fraction of the requests that were served from the pool.
+	 */
+	public double getHitRate() {
+		return (requests == 0) ? 0 : hits / (double)requests;
+	}
+
+	/**
+	 * Get the number of requests made of the pool.
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * Return the molecule to the pool, it must not be referred to by anything else.
+	 */
+	public void recycle(Molecule molecule) {
+		if (count == free.length) {
+			if (count == CAPACITY) {
+				return;
+			}
+			Molecule[] resized = new Molecule[Math.min(count * 2, CAPACITY)];
+			System.arraycopy(free, 0, resized, 0, count);
+			free = resized;
+		}
+		free[count++] = molecule;
+	}
+}
@@ -0,0 +1,273 @@
+package edu.mtu.primitives;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Common base for the spatial indices, this manages the entity store and the
+ * dense list of ids for each tag so that the indices only need to manage their
+ * own structure. Each entity knows its index in the list of its tag so that it
+ * can be removed in constant time by swapping the last id into its place.
+ *
+ * Locations are limited to the range [0, 2^21) on each axis so that they can
+ * be packed into a single long key. Tags are dense, in the range [0, tags), so
+ * that everything kept per tag can be held in a plain array.
+ */
+public abstract class AbstractSpatialIndex implements SpatialIndex {
+
+	// Bits used per axis for a location
+	protected final static int COORDINATE_BITS = 21;
+	protected final static long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+	// The store contains the location and state of the entities
+	protected EntityStore store;
+
+	// The ids of every entity with the given tag, indexed by tag
+	protected IntArrayList[] tagLists;
+
+	// The bit of each tag that has entities, so a search for partners that are all
+	// extinct can be skipped without looking at the lists
+	protected long[] liveTags;
+
+	// The listeners to notify as entities are added and removed
+	protected SpatialIndexListener[] listeners = new SpatialIndexListener[0];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxEntities The maximum number of entities the index is expected to contain.
+	 * @param tags The number of tags, the entities placed in the index must have a tag in [0, tags).
+	 */
+	protected AbstractSpatialIndex(int maxEntities, int tags) {
+		// Allocate the store, note that while we know exactly how many tags we
+		// can expect to see, we need to be pessimistic about the allocation of the
+		// tagged entity lists
+		store = new EntityStore(maxEntities);
+		tagLists = new IntArrayList[tags];
+		liveTags = new long[(tags + Long.SIZE - 1) / Long.SIZE];
+		for (int tag = 0; tag < tags; tag++) {
+			tagLists[tag] = new IntArrayList();
+		}
+	}
+
+	/**
+	 * Add the entity to the index structure, the location has already been set in the store.
+	 */
+	protected abstract void insert(int id);
+
+	/**
+	 * Remove the entity from the index structure, the entity is still in the store.
+	 */
+	protected abstract void delete(int id);
+
+	/**
+	 * Move the entity in the index structure, the store must be updated with the new location.
+	 */
+	protected abstract void move(int id, int x, int y, int z);
+
+	@Override
+	public int add(final Entity entity, final int x, final int y, final int z) {
+		// Start by checking our conditions
+		if (entity == null) {
+			throw new IllegalStateException("Attempting to insert null into lattice.");
+		}
+		int tag = entity.getEntityTypeTag();
+		if (tag < 0 || tag >= tagLists.length) {
+			throw new IllegalArgumentException("Tag " + tag + " is outside of the range of the index.");
+		}
+		checkBounds(x, y, z);
+
+		// Note the entity and location
+		int id = store.add(entity);
+		store.x[id] = x;
+		store.y[id] = y;
+		store.z[id] = z;
+		addToTag(id);
+		insert(id);
+		for (SpatialIndexListener listener : listeners) {
+			listener.added(id);
+		}
+		return id;
+	}
+
+	@Override
+	public void addListener(SpatialIndexListener listener) {
+		SpatialIndexListener[] resized = new SpatialIndexListener[listeners.length + 1];
+		System.arraycopy(listeners, 0, resized, 0, listeners.length);
+		resized[listeners.length] = listener;
+		listeners = resized;
+	}
+
+	@Override
+	public int getEntity(final int tag, final int index) {
+		return tagLists[tag].getInt(index);
+	}
+
+	@Override
+	public void swapEntities(final int tag, final int one, final int two) {
+		IntArrayList entities = tagLists[tag];
+		int first = entities.getInt(one), second = entities.getInt(two);
+		entities.set(one, second);
+		entities.set(two, first);
+		store.tagSlot[first] = two;
+		store.tagSlot[second] = one;
+	}
+
+	@Override
+	public int getEntityCount(final int tag) {
+		return tagLists[tag].size();
+	}
+
+	@Override
+	public long[] getLiveTags() {
+		return liveTags;
+	}
+
+	@Override
+	public int getFirstEntity(final int tag) {
+		IntArrayList entities = tagLists[tag];
+		return entities.isEmpty() ? EntityStore.NONE : entities.getInt(0);
+	}
+
+	@Override
+	public int[] getObjectLocation(final int id) {
+		return new int[] { store.x[id], store.y[id], store.z[id] };
+	}
+
+	@Override
+	public EntityStore getStore() {
+		return store;
+	}
+
+	@Override
+	public void remove(final int id) {
+		if (!store.isAlive(id)) {
+			// This should never actually occur
+			throw new IllegalStateException("Attempted to remove an object not in the lattice.");
+		}
+
+		// Remove from the lists and release the id
+		for (SpatialIndexListener listener : listeners) {
+			listener.removed(id);
+		}
+		removeFromTag(id);
+		delete(id);
+		store.release(id);
+	}
+
+	@Override
+	public int removeN(final int tag, final int n) {
+		IntArrayList entities = tagLists[tag];
+		int size = entities.size();
+		int count = Math.min(n, size);
+
+		// Remove the entities at the end of the list, then drop them from it
+		int[] ids = entities.elements();
+		for (int ndx = size - count; ndx < size; ndx++) {
+			for (SpatialIndexListener listener : listeners) {
+				listener.removed(ids[ndx]);
+			}
+			delete(ids[ndx]);
+			store.release(ids[ndx]);
+		}
+		entities.size(size - count);
+		if (entities.isEmpty()) {
+			liveTags[tag / Long.SIZE] &= ~(1L << (tag % Long.SIZE));
+		}
+		return count;
+	}
+
+	@Override
+	public void setObjectLocation(final int id, final int x, final int y, final int z) {
+		checkBounds(x, y, z);
+		if (listeners.length == 0) {
+			move(id, x, y, z);
+			return;
+		}
+		
+		// Note where the entity was for the listeners
+		int x0 = store.x[id], y0 = store.y[id], z0 = store.z[id];
+		move(id, x, y, z);
+		for (SpatialIndexListener listener : listeners) {
+			listener.moved(id, x0, y0, z0);
+		}
+	}
+
+	/**
+	 * Search for an entity with the given tag by scanning every entity with the tag.
+	 */
+	protected int tagBasedSearch(final int id, final int tag, final int radius, final int x1, final int y1, final int z1) {
+		// The list of the tag only contains live entities, so it can be searched like any other
+		return searchList(tagLists[tag], id, radius, x1, y1, z1);
+	}
+
+	/**
+	 * Search the list for an entity within the radius of the point, the list is assumed
+	 * to only contain entities of the type being searched for. An entity colocated with
+	 * the point is returned as soon as it is found, otherwise the first is returned.
+	 */
+	protected int searchList(final IntArrayList list, final int id, final int radius, final int x1, final int y1, final int z1) {
+		if (list == null) {
+			return EntityStore.NONE;
+		}
+
+		final long limit = (long)radius * radius;
+		final int[] ids = list.elements();
+		int size = list.size();
+		int match = EntityStore.NONE;
+		for (int ndx = 0; ndx < size; ndx++) {
+			int check = ids[ndx];
+			if (check == id) {
+				continue;
+			}
+
+			// Compare the squared distance to avoid the square root
+			long x = x1 - store.x[check];
+			long y = y1 - store.y[check];
+			long z = z1 - store.z[check];
+			long distance = x*x + y*y + z*z;
+			if (distance == 0) {
+				return check;
+			}
+			if (distance <= limit && match == EntityStore.NONE) {
+				match = check;
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * Add the entity to the list for its tag.
+	 */
+	private void addToTag(int id) {
+		IntArrayList entities = tagLists[store.tag[id]];
+		store.tagSlot[id] = entities.size();
+		entities.add(id);
+		if (entities.size() == 1) {
+			liveTags[store.tag[id] / Long.SIZE] |= 1L << (store.tag[id] % Long.SIZE);
+		}
+	}
+
+	/**
+	 * Remove the object from the list for its tag by swapping the last entity into its slot.
+	 */
+	private void removeFromTag(int id) {
+		IntArrayList entities = tagLists[store.tag[id]];
+		int last = entities.removeInt(entities.size() - 1);
+		if (last != id) {
+			entities.set(store.tagSlot[id], last);
+			store.tagSlot[last] = store.tagSlot[id];
+		}
+		if (entities.isEmpty()) {
+			liveTags[store.tag[id] / Long.SIZE] &= ~(1L << (store.tag[id] % Long.SIZE));
+		}
+	}
+
+	/**
+	 * Make sure the location is in the index.
+	 */
+	protected static void checkBounds(int x, int y, int z) {
+		if (((x | y | z) & ~COORDINATE_MASK) != 0) {
+			throw new IllegalArgumentException("Location is outside of the lattice.");
+		}
+	}
+}
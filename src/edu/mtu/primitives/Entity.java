@@ -4,5 +4,15 @@ public interface Entity {
 	/**
 	 * A unique integer value that identifies this entity type.
 	 */
-	public Integer getEntityTypeTag();
+	public int getEntityTypeTag();
+	
+	/**
+	 * The id of this entity in the lattice, or EntityStore.NONE if it is not in one.
+	 */
+	public int getEntityId();
+	
+	/**
+	 * Set the id of this entity, called by the EntityStore.
+	 */
+	public void setEntityId(int id);
 }
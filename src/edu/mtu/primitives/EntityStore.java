@@ -0,0 +1,166 @@
+package edu.mtu.primitives;
+
+/**
+ * A dense, structure of arrays, store for the entities in a lattice. Each entity
+ * is addressed by an integer id that indexes into the arrays, ids of entities
+ * that are released are placed on a free list and reused.
+ *
+ * Like the Bag, the arrays are exposed to encourage direct access; however, they
+ * may be reallocated as the store grows so references should not be held.
+ */
+public class EntityStore {
+
+	/**
+	 * The id of an entity that is not in the store.
+	 */
+	public final static int NONE = -1;
+
+	/**
+	 * Flag indicating that the id is in use.
+	 */
+	public final static int ALIVE = 0x1;
+
+	/**
+	 * Approximate bytes used per entity by the arrays: eight ints and a reference.
+	 */
+	public final static int BYTES_PER_ENTITY = 8 * 4 + 4;
+
+	// Growth factor used when the store is full
+	private final static double GROWTH = 1.5;
+
+	// Location of the entities
+	public int[] x;
+	public int[] y;
+	public int[] z;
+
+	// The type tag of the entity, flags, and the last step it was acted upon
+	public int[] tag;
+	public int[] flags;
+	public int[] step;
+
+	// Index of the entity in its cell and in the list of its tag, maintained by the lattice
+	int[] cellSlot;
+	int[] tagSlot;
+
+	// The entities themselves
+	private Entity[] entities;
+
+	// Ids that have been released and can be reused
+	private int[] free;
+	private int freeCount;
+
+	// Number of ids that have been handed out, and the number in use
+	private int highWater;
+	private int count;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity The initial number of entities the store can hold.
+	 */
+	public EntityStore(int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+
+	/**
+	 * Add the entity to the store, the id assigned is noted by the entity.
+	 *
+	 * @param entity to add.
+	 * @return The id of the entity.
+	 */
+	public int add(Entity entity) {
+		int id;
+		if (freeCount > 0) {
+			id = free[--freeCount];
+		} else {
+			if (highWater == entities.length) {
+				allocate((int)(entities.length * GROWTH) + 1);
+			}
+			id = highWater++;
+		}
+
+		entities[id] = entity;
+		tag[id] = entity.getEntityTypeTag();
+		flags[id] = ALIVE;
+		step[id] = 0;
+		entity.setEntityId(id);
+		count++;
+		return id;
+	}
+
+	/**
+	 * Get the entity with the given id.
+	 */
+	public Entity get(int id) {
+		return entities[id];
+	}
+
+	/**
+	 * Get the number of entities in the store.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the upper bound (exclusive) of the ids that have been handed out.
+	 */
+	public int getHighWater() {
+		return highWater;
+	}
+
+	/**
+	 * Returns true if the id is in use, false otherwise.
+	 */
+	public boolean isAlive(int id) {
+		return (flags[id] & ALIVE) != 0;
+	}
+
+	/**
+	 * Release the id so that it may be reused.
+	 */
+	public void release(int id) {
+		entities[id].setEntityId(NONE);
+		entities[id] = null;
+		flags[id] = 0;
+
+		if (freeCount == free.length) {
+			free = grow(free, entities.length);
+		}
+		free[freeCount++] = id;
+		count--;
+	}
+
+	/**
+	 * Allocate, or reallocate, the arrays so they can hold the given number of entities.
+	 */
+	private void allocate(int capacity) {
+		x = grow(x, capacity);
+		y = grow(y, capacity);
+		z = grow(z, capacity);
+		tag = grow(tag, capacity);
+		flags = grow(flags, capacity);
+		step = grow(step, capacity);
+		cellSlot = grow(cellSlot, capacity);
+		tagSlot = grow(tagSlot, capacity);
+
+		Entity[] resized = new Entity[capacity];
+		if (entities != null) {
+			System.arraycopy(entities, 0, resized, 0, entities.length);
+		} else {
+			free = new int[capacity];
+		}
+		entities = resized;
+	}
+
+	/**
+	 * Copy the array into a new one of the given size.
+	 */
+	private static int[] grow(int[] array, int capacity) {
+		int[] resized = new int[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, resized, 0, array.length);
+		}
+		return resized;
+	}
+}
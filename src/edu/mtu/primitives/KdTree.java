@@ -0,0 +1,365 @@
+package edu.mtu.primitives;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import sim.util.Bag;
+
+/**
+ * A periodically rebuilt k-d tree, each tag has its own tree that is stored
+ * implicitly as arrays sorted around the median of alternating axes. Rather than
+ * updating the tree as entities move it keeps the locations the tree was built
+ * with along with the largest distance, along any axis, that an entity has drifted
+ * from them. Searches widen the sphere by that drift to prune the tree and then
+ * check the current location, so they remain exact. Entities added since the tree
+ * was built are kept in a pending list that is scanned.
+ *
+ * The tree for a tag is rebuilt by the first search after it goes stale, that is
+ * when the drift exceeds the largest search radius, or too many entities have been
+ * added or removed since it was built.
+ */
+public class KdTree extends AbstractSpatialIndex {
+
+	/**
+	 * Approximate bytes used per entity by the k-d tree, including the store: the id
+	 * and location in the tree, which are allocated with half again as much room, the
+	 * tree index, and the list of the tag.
+	 */
+	public final static int BYTES_PER_ENTITY = EntityStore.BYTES_PER_ENTITY + 9 * 4;
+
+	// Ranges of the tree smaller than this are just scanned
+	private final static int LEAF_SIZE = 8;
+
+	// The tree is rebuilt once the pending or removed entities exceed this fraction of it
+	private final static int PENDING_RATIO = 8;
+	private final static int REMOVED_RATIO = 4;
+
+	// If there are fewer entities of a tag than this they are just scanned
+	private final static int SCAN_LIMIT = 27;
+
+	// The tree for a single tag
+	private static class Tree {
+		// The ids and locations, as they were when the tree was built
+		int[] ids = new int[0];
+		int[] x = new int[0], y = new int[0], z = new int[0];
+		int size;
+
+		// Entities added since the tree was built
+		IntArrayList pending = new IntArrayList();
+
+		// Number of entities removed, and the furthest one has moved, since the tree was built
+		int removed;
+		int drift;
+	}
+
+	// The tree for each tag, indexed by tag
+	private Tree[] trees;
+
+	// The index of each entity in its tree, or NONE if it is pending
+	private int[] treeIndex;
+
+	// The drift that triggers a rebuild, this is the largest search radius
+	private int driftLimit;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxEntities The maximum number of entities the tree is expected to contain.
+	 * @param tags The number of tags, the entities placed in the tree must have a tag in [0, tags).
+	 * @param maxRadius The largest search radius that will be used with the tree.
+	 */
+	public KdTree(int maxEntities, int tags, int maxRadius) {
+		super(maxEntities, tags);
+		driftLimit = Math.max(maxRadius, 1);
+		treeIndex = new int[Math.max(maxEntities, 1)];
+		trees = new Tree[tags];
+		for (int tag = 0; tag < tags; tag++) {
+			trees[tag] = new Tree();
+		}
+	}
+
+	@Override
+	public int findFirstByTag(final int id, final int tag, final int radius) {
+		// Start by peeking to see if there are any entities with the given tag
+		IntArrayList entities = tagLists[tag];
+		if (entities.isEmpty()) {
+			return EntityStore.NONE;
+		}
+
+		// Scan small populations, otherwise use the tree
+		int x1 = store.x[id], y1 = store.y[id], z1 = store.z[id];
+		if (entities.size() <= SCAN_LIMIT) {
+			return tagBasedSearch(id, tag, radius, x1, y1, z1);
+		}
+		Tree tree = trees[tag];
+		if (isStale(tree)) {
+			build(tree, entities);
+		}
+		return search(tree, tag, id, radius, x1, y1, z1, null);
+	}
+
+	@Override
+	public Bag getColocatedObjects(final int id) {
+		Bag bag = new Bag();
+		for (int tag = 0; tag < trees.length; tag++) {
+			search(trees[tag], tag, EntityStore.NONE, 0, store.x[id], store.y[id], store.z[id], bag);
+		}
+		return bag;
+	}
+
+	@Override
+	protected void insert(int id) {
+		if (id >= treeIndex.length) {
+			treeIndex = Arrays.copyOf(treeIndex, Math.max(id + 1, treeIndex.length + (treeIndex.length >> 1)));
+		}
+
+		// New entities wait in the pending list until the next build
+		IntArrayList pending = trees[store.tag[id]].pending;
+		treeIndex[id] = EntityStore.NONE;
+		store.cellSlot[id] = pending.size();
+		pending.add(id);
+	}
+
+	@Override
+	protected void delete(int id) {
+		Tree tree = trees[store.tag[id]];
+
+		// Entities in the tree are just marked as removed, they are dropped on the next build
+		if (treeIndex[id] != EntityStore.NONE) {
+			treeIndex[id] = EntityStore.NONE;
+			tree.removed++;
+			return;
+		}
+
+		// Otherwise swap the last pending entity into the slot
+		int last = tree.pending.removeInt(tree.pending.size() - 1);
+		if (last != id) {
+			tree.pending.set(store.cellSlot[id], last);
+			store.cellSlot[last] = store.cellSlot[id];
+		}
+	}
+
+	@Override
+	protected void move(final int id, final int x, final int y, final int z) {
+		store.x[id] = x;
+		store.y[id] = y;
+		store.z[id] = z;
+
+		// Note how far the entity is from where the tree thinks it is
+		int ndx = treeIndex[id];
+		if (ndx != EntityStore.NONE) {
+			Tree tree = trees[store.tag[id]];
+			int drift = Math.max(Math.abs(x - tree.x[ndx]), Math.max(Math.abs(y - tree.y[ndx]), Math.abs(z - tree.z[ndx])));
+			if (drift > tree.drift) {
+				tree.drift = drift;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the tree should be rebuilt before it is searched.
+	 */
+	private boolean isStale(Tree tree) {
+		return tree.drift > driftLimit ||
+			   tree.pending.size() > LEAF_SIZE + tree.size / PENDING_RATIO ||
+			   tree.removed > tree.size / REMOVED_RATIO;
+	}
+
+	/**
+	 * Rebuild the tree from the current locations of the entities.
+	 */
+	private void build(Tree tree, IntArrayList entities) {
+		// Make sure the arrays can hold the entities
+		int size = entities.size();
+		if (tree.ids.length < size) {
+			int capacity = size + (size >> 1);
+			tree.ids = new int[capacity];
+			tree.x = new int[capacity];
+			tree.y = new int[capacity];
+			tree.z = new int[capacity];
+		}
+
+		// Copy the current locations
+		System.arraycopy(entities.elements(), 0, tree.ids, 0, size);
+		for (int ndx = 0; ndx < size; ndx++) {
+			int id = tree.ids[ndx];
+			tree.x[ndx] = store.x[id];
+			tree.y[ndx] = store.y[id];
+			tree.z[ndx] = store.z[id];
+		}
+		tree.size = size;
+
+		// Sort the tree and note the index of each entity
+		sort(tree, 0, size, 0);
+		for (int ndx = 0; ndx < size; ndx++) {
+			treeIndex[tree.ids[ndx]] = ndx;
+		}
+
+		tree.pending.clear();
+		tree.removed = 0;
+		tree.drift = 0;
+	}
+
+	/**
+	 * Sort the range so the median on the axis is in the middle, with the lower values
+	 * before it and the higher values after it, then do the same for each half on the
+	 * next axis.
+	 */
+	private static void sort(Tree tree, int lo, int hi, int axis) {
+		while (hi - lo > LEAF_SIZE) {
+			int mid = (lo + hi) >>> 1;
+			select(tree, lo, hi - 1, mid, axis);
+			int next = (axis + 1) % 3;
+			sort(tree, lo, mid, next);
+			lo = mid + 1;
+			axis = next;
+		}
+	}
+
+	/**
+	 * Partially sort the range [lo, hi] so the k-th smallest value on the axis is at k.
+	 */
+	private static void select(Tree tree, int lo, int hi, int k, int axis) {
+		int[] values = coordinates(tree, axis);
+		while (hi > lo) {
+			// Partition around the median of three
+			int pivot = medianOfThree(values, lo, (lo + hi) >>> 1, hi);
+			int ndx = lo, jdx = hi;
+			while (ndx <= jdx) {
+				while (values[ndx] < pivot) ndx++;
+				while (values[jdx] > pivot) jdx--;
+				if (ndx <= jdx) {
+					swap(tree, ndx++, jdx--);
+				}
+			}
+
+			// Continue with the side containing k
+			if (k <= jdx) {
+				hi = jdx;
+			} else if (k >= ndx) {
+				lo = ndx;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Search the tree, and the pending entities, for entities within the radius of the
+	 * point. If a bag is provided then all of the matches are added to it, otherwise the
+	 * first match is returned.
+	 */
+	private int search(Tree tree, int tag, int id, int radius, int x1, int y1, int z1, Bag bag) {
+		int match = search(tree, tag, 0, tree.size, 0, id, radius, radius + tree.drift, x1, y1, z1, bag);
+		if (match != EntityStore.NONE) {
+			return match;
+		}
+
+		IntArrayList pending = tree.pending;
+		for (int ndx = 0; ndx < pending.size(); ndx++) {
+			match = check(pending.getInt(ndx), id, radius, x1, y1, z1, bag);
+			if (match != EntityStore.NONE) {
+				return match;
+			}
+		}
+		return EntityStore.NONE;
+	}
+
+	/**
+	 * Search the range [lo, hi) of the tree which is split on the given axis.
+	 */
+	private int search(Tree tree, int tag, int lo, int hi, int axis, int id, int radius, int reach, int x1, int y1, int z1, Bag bag) {
+		// Scan the range if it is small enough
+		if (hi - lo <= LEAF_SIZE) {
+			for (int ndx = lo; ndx < hi; ndx++) {
+				int match = checkTree(tree, tag, ndx, id, radius, x1, y1, z1, bag);
+				if (match != EntityStore.NONE) {
+					return match;
+				}
+			}
+			return EntityStore.NONE;
+		}
+
+		// Start with the median
+		int mid = (lo + hi) >>> 1;
+		int match = checkTree(tree, tag, mid, id, radius, x1, y1, z1, bag);
+		if (match != EntityStore.NONE) {
+			return match;
+		}
+
+		// Then the side of the point, followed by the other side if the sphere crosses the split
+		int next = (axis + 1) % 3;
+		int diff = ((axis == 0) ? x1 : (axis == 1) ? y1 : z1) - coordinates(tree, axis)[mid];
+		if (diff < 0) {
+			match = search(tree, tag, lo, mid, next, id, radius, reach, x1, y1, z1, bag);
+			if (match == EntityStore.NONE && -diff <= reach) {
+				match = search(tree, tag, mid + 1, hi, next, id, radius, reach, x1, y1, z1, bag);
+			}
+		} else {
+			match = search(tree, tag, mid + 1, hi, next, id, radius, reach, x1, y1, z1, bag);
+			if (match == EntityStore.NONE && diff <= reach) {
+				match = search(tree, tag, lo, mid, next, id, radius, reach, x1, y1, z1, bag);
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * Check the entity at the index of the tree, making sure it is still in the tree.
+	 */
+	private int checkTree(Tree tree, int tag, int ndx, int id, int radius, int x1, int y1, int z1, Bag bag) {
+		// The id may have been removed, and possibly reused, since the tree was built
+		int check = tree.ids[ndx];
+		if (treeIndex[check] != ndx || store.tag[check] != tag) {
+			return EntityStore.NONE;
+		}
+		return check(check, id, radius, x1, y1, z1, bag);
+	}
+
+	/**
+	 * Check the current location of the entity against the sphere.
+	 */
+	private int check(int check, int id, int radius, int x1, int y1, int z1, Bag bag) {
+		if (check == id) {
+			return EntityStore.NONE;
+		}
+
+		// Compare the squared distance to avoid the square root
+		long x = x1 - store.x[check];
+		long y = y1 - store.y[check];
+		long z = z1 - store.z[check];
+		if (x*x + y*y + z*z > (long)radius * radius) {
+			return EntityStore.NONE;
+		}
+		if (bag != null) {
+			bag.add(store.get(check));
+			return EntityStore.NONE;
+		}
+		return check;
+	}
+
+	/**
+	 * Get the coordinates of the tree along the axis.
+	 */
+	private static int[] coordinates(Tree tree, int axis) {
+		return (axis == 0) ? tree.x : (axis == 1) ? tree.y : tree.z;
+	}
+
+	/**
+	 * Get the median of the three values at the indices.
+	 */
+	private static int medianOfThree(int[] values, int a, int b, int c) {
+		int x = values[a], y = values[b], z = values[c];
+		return Math.max(Math.min(x, y), Math.min(Math.max(x, y), z));
+	}
+
+	/**
+	 * Swap the entries of the tree at the indices.
+	 */
+	private static void swap(Tree tree, int a, int b) {
+		int temp = tree.ids[a]; tree.ids[a] = tree.ids[b]; tree.ids[b] = temp;
+		temp = tree.x[a]; tree.x[a] = tree.x[b]; tree.x[b] = temp;
+		temp = tree.y[a]; tree.y[a] = tree.y[b]; tree.y[b] = temp;
+		temp = tree.z[a]; tree.z[a] = tree.z[b]; tree.z[b] = temp;
+	}
+}
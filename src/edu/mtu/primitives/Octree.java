@@ -0,0 +1,316 @@
+package edu.mtu.primitives;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import sim.util.Bag;
+
+/**
+ * An adaptive octree, each tag has its own tree covering the whole index. Leaves
+ * are split into octants when they hold more than LEAF_CAPACITY entities and
+ * subtrees are collapsed back into a single leaf once they fall below half of
+ * that, so the tree is deep where the entities are dense and shallow where they
+ * are dilute. A search only descends into the octants that intersect the sphere.
+ *
+ * Each entity notes the leaf it is in, and like the lattice, its index in the
+ * leaf so it can be removed by swapping the last id into its place.
+ */
+public class Octree extends AbstractSpatialIndex {
+
+	// Parameters for splitting and merging nodes, this is a point where tuning can take place
+	private final static int LEAF_CAPACITY = 16;
+	private final static int MERGE_THRESHOLD = LEAF_CAPACITY / 2;
+
+	// Approximate bytes used by a leaf, the node itself and its list of ids
+	private final static int LEAF_BYTES = 40 + 24 + 16 + 4 * LEAF_CAPACITY;
+
+	/**
+	 * Approximate bytes used per entity by the octree, including the store. A split
+	 * leaves eight lightly filled octants, so at reactor densities the leaves hold
+	 * about two entities each.
+	 */
+	public final static int BYTES_PER_ENTITY = EntityStore.BYTES_PER_ENTITY + 3 * 4 + LEAF_BYTES / 2;
+
+	// If there are fewer entities of a tag than this they are just scanned
+	private final static int SCAN_LIMIT = 27;
+
+	// Nodes of the tree, leaves have ids while branches have children
+	private static class Node {
+		final int x, y, z, size;
+		final Node parent;
+		Node[] children;
+		IntArrayList ids;
+		int count;
+
+		Node(Node parent, int x, int y, int z, int size) {
+			this.parent = parent;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.size = size;
+			ids = new IntArrayList(LEAF_CAPACITY);
+		}
+	}
+
+	// The root of the tree for each tag, indexed by tag
+	private Node[] roots;
+
+	// The leaf that contains each entity
+	private Node[] leaves;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxEntities The maximum number of entities the octree is expected to contain.
+	 * @param tags The number of tags, the entities placed in the octree must have a tag in [0, tags).
+	 */
+	public Octree(int maxEntities, int tags) {
+		super(maxEntities, tags);
+		leaves = new Node[Math.max(maxEntities, 1)];
+		roots = new Node[tags];
+		for (int tag = 0; tag < tags; tag++) {
+			roots[tag] = new Node(null, 0, 0, 0, 1 << COORDINATE_BITS);
+		}
+	}
+
+	@Override
+	public int findFirstByTag(final int id, final int tag, final int radius) {
+		// Start by peeking to see if there are any entities with the given tag
+		IntArrayList entities = tagLists[tag];
+		if (entities.isEmpty()) {
+			return EntityStore.NONE;
+		}
+
+		// Scan small populations, otherwise descend the tree
+		int x1 = store.x[id], y1 = store.y[id], z1 = store.z[id];
+		if (entities.size() <= SCAN_LIMIT) {
+			return tagBasedSearch(id, tag, radius, x1, y1, z1);
+		}
+		return search(roots[tag], id, radius, (long)radius * radius, x1, y1, z1);
+	}
+
+	/**
+	 * Search the node for the first entity within the radius of the point.
+	 */
+	private int search(Node node, int id, int radius, long limit, int x1, int y1, int z1) {
+		// Press on if the node is empty or does not intersect the sphere
+		if (node.count == 0 || distanceSquared(node, x1, y1, z1) > limit) {
+			return EntityStore.NONE;
+		}
+		if (node.children == null) {
+			return searchList(node.ids, id, radius, x1, y1, z1);
+		}
+
+		// Start with the octant containing the point since a match is most likely there,
+		// flipping bits of the index then visits the octants next to it
+		int first = octant(node, x1, y1, z1);
+		for (int ndx = 0; ndx < 8; ndx++) {
+			int match = search(node.children[first ^ ndx], id, radius, limit, x1, y1, z1);
+			if (match != EntityStore.NONE) {
+				return match;
+			}
+		}
+		return EntityStore.NONE;
+	}
+
+	@Override
+	public Bag getColocatedObjects(final int id) {
+		int x = store.x[id], y = store.y[id], z = store.z[id];
+		Bag bag = new Bag();
+		for (Node node : roots) {
+			// Find the leaf that would contain the point and check it
+			while (node.children != null) {
+				node = node.children[octant(node, x, y, z)];
+			}
+			for (int ndx = 0; ndx < node.ids.size(); ndx++) {
+				int check = node.ids.getInt(ndx);
+				if (store.x[check] == x && store.y[check] == y && store.z[check] == z) {
+					bag.add(store.get(check));
+				}
+			}
+		}
+		return bag;
+	}
+
+	@Override
+	protected void insert(int id) {
+		int x = store.x[id], y = store.y[id], z = store.z[id];
+
+		// Descend to the leaf, noting the new entity along the way
+		Node node = roots[store.tag[id]];
+		node.count++;
+		while (node.children != null) {
+			node = node.children[octant(node, x, y, z)];
+			node.count++;
+		}
+
+		addToLeaf(node, id);
+		if (node.ids.size() > LEAF_CAPACITY) {
+			split(node);
+		}
+	}
+
+	@Override
+	protected void delete(int id) {
+		// Remove from the leaf and note it up the tree
+		Node leaf = leaves[id];
+		removeFromLeaf(leaf, id);
+		for (Node node = leaf; node != null; node = node.parent) {
+			node.count--;
+		}
+
+		// Collapse the largest subtree that has become sparse
+		Node merge = null;
+		for (Node node = leaf.parent; node != null && node.count <= MERGE_THRESHOLD; node = node.parent) {
+			merge = node;
+		}
+		if (merge != null) {
+			collapse(merge);
+		}
+	}
+
+	@Override
+	protected void move(final int id, final int x, final int y, final int z) {
+		// The tree only needs to change if we left the leaf
+		Node leaf = leaves[id];
+		if (contains(leaf, x, y, z)) {
+			store.x[id] = x;
+			store.y[id] = y;
+			store.z[id] = z;
+			return;
+		}
+		delete(id);
+		store.x[id] = x;
+		store.y[id] = y;
+		store.z[id] = z;
+		insert(id);
+	}
+
+	/**
+	 * Add the entity to the leaf.
+	 */
+	private void addToLeaf(Node leaf, int id) {
+		if (id >= leaves.length) {
+			leaves = Arrays.copyOf(leaves, Math.max(id + 1, leaves.length + (leaves.length >> 1)));
+		}
+		leaves[id] = leaf;
+		store.cellSlot[id] = leaf.ids.size();
+		leaf.ids.add(id);
+	}
+
+	/**
+	 * Remove the entity from its leaf by swapping the last entity into its slot.
+	 */
+	private void removeFromLeaf(Node leaf, int id) {
+		int last = leaf.ids.removeInt(leaf.ids.size() - 1);
+		if (last != id) {
+			leaf.ids.set(store.cellSlot[id], last);
+			store.cellSlot[last] = store.cellSlot[id];
+		}
+		leaves[id] = null;
+	}
+
+	/**
+	 * Split the leaf into octants, any octant that is still over capacity is split as well.
+	 * Note that a leaf of unit size can't be split, so entities at the same point remain together.
+	 */
+	private void split(Node node) {
+		if (node.size == 1) {
+			return;
+		}
+
+		// Create the children
+		int half = node.size >> 1;
+		node.children = new Node[8];
+		for (int ndx = 0; ndx < 8; ndx++) {
+			node.children[ndx] = new Node(node,
+					node.x + ((ndx & 1) != 0 ? half : 0),
+					node.y + ((ndx & 2) != 0 ? half : 0),
+					node.z + ((ndx & 4) != 0 ? half : 0),
+					half);
+		}
+
+		// Distribute the entities
+		IntArrayList ids = node.ids;
+		node.ids = null;
+		for (int ndx = 0; ndx < ids.size(); ndx++) {
+			int id = ids.getInt(ndx);
+			Node child = node.children[octant(node, store.x[id], store.y[id], store.z[id])];
+			addToLeaf(child, id);
+			child.count++;
+		}
+		for (Node child : node.children) {
+			if (child.ids.size() > LEAF_CAPACITY) {
+				split(child);
+			}
+		}
+	}
+
+	/**
+	 * Collapse the subtree rooted at the node into a single leaf.
+	 */
+	private void collapse(Node node) {
+		IntArrayList ids = new IntArrayList(Math.max(node.count, LEAF_CAPACITY));
+		gather(node, ids);
+		node.children = null;
+		node.ids = new IntArrayList(LEAF_CAPACITY);
+		for (int ndx = 0; ndx < ids.size(); ndx++) {
+			addToLeaf(node, ids.getInt(ndx));
+		}
+	}
+
+	/**
+	 * Gather the ids of all of the entities in the subtree.
+	 */
+	private static void gather(Node node, IntArrayList ids) {
+		if (node.children == null) {
+			ids.addAll(node.ids);
+			return;
+		}
+		for (Node child : node.children) {
+			if (child.count != 0) {
+				gather(child, ids);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the point is inside of the node.
+	 */
+	private static boolean contains(Node node, int x, int y, int z) {
+		return x >= node.x && x < node.x + node.size &&
+			   y >= node.y && y < node.y + node.size &&
+			   z >= node.z && z < node.z + node.size;
+	}
+
+	/**
+	 * Get the squared distance from the point to the closest point in the node.
+	 */
+	private static long distanceSquared(Node node, int x1, int y1, int z1) {
+		long x = axisDistance(x1, node.x, node.size);
+		long y = axisDistance(y1, node.y, node.size);
+		long z = axisDistance(z1, node.z, node.size);
+		return x*x + y*y + z*z;
+	}
+
+	/**
+	 * Get the distance along one axis from the value to the range [start, start + size).
+	 */
+	private static long axisDistance(int value, int start, int size) {
+		if (value < start) {
+			return start - value;
+		}
+		int end = start + size - 1;
+		return (value > end) ? value - end : 0;
+	}
+
+	/**
+	 * Get the index of the octant of the node containing the point.
+	 */
+	private static int octant(Node node, int x, int y, int z) {
+		int half = node.size >> 1;
+		return ((x - node.x >= half) ? 1 : 0) |
+			   ((y - node.y >= half) ? 2 : 0) |
+			   ((z - node.z >= half) ? 4 : 0);
+	}
+}
@@ -1,458 +1,446 @@
 package edu.mtu.primitives;
 
-import java.util.ArrayDeque;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import sim.util.Bag;
 
 /**
- * A sparse volume consists of entities that exist in an integer lattice. 
+ * A sparse volume consists of entities that exist in an integer lattice.
  * Entities are assumed to only occupy one point in the lattice; however,
- * multiple entities can occupy the same point in space. The volume is 
+ * multiple entities can occupy the same point in space. The volume is
  * partitioned to optimize distance based searches by avoiding scanning
- * the entire entity list. 
- * 
+ * the entire entity list.
+ *
  * In order to ensure that objects are as performant as possible the volume
- * needs to be initialized with what the expected peak usage will be. This 
- * means that there may be a lot of empty space in it, but overall the 
- * execution should be faster since we aren't reallocating the space. 
- * 
- * This approach borrows heavily from the SparseGrid3D class developed by 
- * Sean Luke (GMU) for MASON. 
+ * needs to be initialized with what the expected peak usage will be. This
+ * means that there may be a lot of empty space in it, but overall the
+ * execution should be faster since we aren't reallocating the space.
+ *
+ * Distance based searches are supported by a uniform cell list, the cells
+ * are sized to the largest search radius so any entity within the radius
+ * of a point must be in the cell containing the point, or one of the 26
+ * cells that neighbor it. Each tag has its own cell list so that a search
+ * only ever visits entities with the tag being searched for.
+ *
+ * The entities themselves are addressed by the id assigned to them by the
+ * EntityStore which also holds their location, so the lattice only needs
+ * to keep the ids in the cells.
+ *
+ * This approach borrows heavily from the SparseGrid3D class developed by
+ * Sean Luke (GMU) for MASON.
  */
-public class Sparse3DLattice {
+public class Sparse3DLattice extends AbstractSpatialIndex {
 
-	// Multiplier for setting the initial hash map size
-	private final static int ENTITY_MULTIPLIER = 2;
-	
-	// Parameters for sizing and resizing bags, this is a point where tuning can take place
+	/**
+	 * Approximate bytes used per entity by the lattice, including the store. At reactor
+	 * densities most cells hold a single entity, so each entity also pays for a cell list
+	 * and its entry in the map, about 72 bytes.
+	 */
+	public final static int BYTES_PER_ENTITY = EntityStore.BYTES_PER_ENTITY + 2 * 4 + 72;
+
+	// Parameters for sizing and resizing cells, this is a point where tuning can take place
 	private final static int INITIAL_BAG_SIZE = 8;
 	private final static int LARGE_BAG_RATIO = 4;
 	private final static int MIN_BAG_SIZE = 16;
 	private final static int REPLACEMENT_BAG_RATIO = 2;
+	private final static int SPARE_BAGS = 4096;
+
+	// Number of cells probed by a cell based search (3 x 3 x 3)
+	private final static int CELL_PROBES = 27;
+
+	// Bits used per axis when packing coordinates into a single key
+	private final static int PACK_BITS = COORDINATE_BITS;
+	private final static long PACK_MASK = COORDINATE_MASK;
+
+	// Relative cost of checking a point of the sphere versus checking an entity in a cell
+	private final static int POINT_PROBE_COST = 8;
+
+	// The cell list for each tag, indexed by tag and keyed by the packed cell coordinates
+	private Long2ObjectOpenHashMap<IntArrayList>[] cellMap;
+
+	// Cells that have been emptied, kept so entities moving into an empty cell don't allocate
+	private ObjectArrayList<IntArrayList> spareCells = new ObjectArrayList<IntArrayList>();
+
+	// The first entity at each point for the tags that have been searched geometrically,
+	// indexed by tag, the other entities at the point are linked from it
+	private Long2IntOpenHashMap[] pointMap;
+	private boolean hasPoints;
+	private int[] nextAtPoint;
+	private int[] previousAtPoint;
+
+	// The extents of the locations seen, used to estimate the density
+	private int maxX, maxY, maxZ;
+
+	// The length of a side of a cell, must be at least the largest search radius
+	private int cellSize;
 
-	// This map allows us to find where the entity is and colocated entities in O(c)
-	private Map<Entity, LocationAndIndex> entityMap;
-
-	// This map allows us to search for other entities by probing the space, since we are hashing
-	// the coordinates we really only need that hash value to find entities
-	private Map<Integer, Bag> latticeMap;
-	
-	// This map allows us to search the lattice for bags containing the relevant entity
-	private Map<Integer, ArrayDeque<Entity>> tagMap;
-	
-	// The size of the partitioned hash tables, used for hashing
-	private int allocation;
-		
 	/**
 	 * Private constructor.
 	 */
-	private Sparse3DLattice() {	}
-		
+	private Sparse3DLattice(int maxEntities, int tags) {
+		super(maxEntities, tags);
+	}
+
 	/**
 	 * Create a new sparse 3d lattice structure for use.
-	 * 
+	 *
 	 * @param maxEntities The maximum number of entities the lattice is expected to contain.
+	 * @param tags The number of tags, the entities placed in the lattice must have a tag in [0, tags).
+	 * @param maxRadius The largest search radius that will be used with the lattice.
 	 * @return The initialized lattice.
 	 */
-	public static Sparse3DLattice create3DLattice(int maxEntities, int[] tags) {
-		Sparse3DLattice lattice = new Sparse3DLattice();
-		
-		// Assume a uniform distribution of entities
-		lattice.allocation = maxEntities * ENTITY_MULTIPLIER;
-				
-		// Allocate the entity map, note that while we know exactly how many tags we
-		// can expect to see, we need to be pessimistic about the allocation of the 
-		// tagged entity maps
-		lattice.entityMap = new Object2ObjectOpenHashMap<Entity, LocationAndIndex>(lattice.allocation);
-		lattice.latticeMap = new Int2ObjectOpenHashMap<Bag>(lattice.allocation);
-		lattice.tagMap = new Int2ObjectOpenHashMap<ArrayDeque<Entity>>(tags.length);
-		for (int key : tags) {
-			if (lattice.tagMap.containsKey(key)) {
-				throw new IllegalAccessError("Key collision {hash = " + key + "} while allocating the tagMap.");
-			}
-			lattice.tagMap.put(key, new ArrayDeque<Entity>());
-		}				
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static Sparse3DLattice create3DLattice(int maxEntities, int tags, int maxRadius) {
+		Sparse3DLattice lattice = new Sparse3DLattice(maxEntities, tags);
+
+		// Size the cells so that a search never needs to look past the neighboring cells
+		lattice.cellSize = Math.max(maxRadius, 1);
+
+		// Allocate the cell list for each tag, the point lists are allocated as needed
+		lattice.pointMap = new Long2IntOpenHashMap[tags];
+		lattice.cellMap = new Long2ObjectOpenHashMap[tags];
+		for (int tag = 0; tag < tags; tag++) {
+			lattice.cellMap[tag] = new Long2ObjectOpenHashMap<IntArrayList>();
+		}
 		return lattice;
 	}
-		
+
 	/**
 	 * Find the first entity with the given tag in the radius from the given entity.
-	 * This method starts by first ensuring any of the given entity type exist followed
-	 * by then checking for entities colocated with it. At that point it will then
-	 * scan all of the entities with the same type to see if one is found within
-	 * the given search radius.
-	 * 
-	 * @param entity to base the search on.
+	 * This method starts by first ensuring any of the given entity type exist. Searches
+	 * for colocated entities may then look up the point directly if the entities are
+	 * dense enough. Otherwise the entities with the same type in the neighboring cells
+	 * are scanned in a single pass to see if one is found within the given search
+	 * radius, with entities colocated with it preferred.
+	 *
+	 * @param id of the entity to base the search on.
 	 * @param tag to search for.
 	 * @param radius defining the sphere.
-	 * @return The first entity with a matching tag in the sphere, or null.
+	 * @return The id of the first entity with a matching tag in the sphere, or EntityStore.NONE.
 	 */
-	public Entity findFirstByTag(final Entity entity, final Integer tag, final int radius) {
-				
+	@Override
+	public int findFirstByTag(final int id, final int tag, final int radius) {
+
 		// Start by peeking to see if there are any entities with the given tag
-		if (tagMap.get(tag).isEmpty()) {
-			return null;
+		if (tagLists[tag].isEmpty()) {
+			return EntityStore.NONE;
 		}
-		
-		// Get our location and check this bag		
-		LocationAndIndex lai = entityMap.get(entity);
-		int size = lai.colocated.numObjs;
-		for (int ndx = 0; ndx < size; ndx++) {
-			Entity checking = (Entity)lai.colocated.objs[ndx];
-			if (checking.equals(entity)) {
-				continue;
-			}
-			if (checking.getEntityTypeTag().equals(tag)) {
-				return checking;
-			}
-		}
-		
-		// Return if the radius is zero, this indicates the colocated entities only
+
+		// Visiting the points of the sphere returns the nearest entity rather than the
+		// first one found, so it is only used when the two are the same; when only the
+		// colocated entities are wanted and they are dense enough to keep the points
+		int x1 = store.x[id], y1 = store.y[id], z1 = store.z[id];
 		if (radius == 0) {
-			return null;
-		}
-		
-		// Calculate how big the search space is for a geometric search
-		// and chose our approach accordingly
-//		int points = (int)((4 / 3) * Math.PI * Math.pow(radius, 3));
-//		if (tagMap.get(tag).size() > points) {
-//			return distanceBasedSearch(entity, tag, radius, lai.location[0], lai.location[1], lai.location[2]);
-//		}
-		return tagBasedSearch(entity, tag, radius, lai.location[0], lai.location[1], lai.location[2]);
-	}
-	
-	/**
-	 * Search for an entity with the given tag, using the tags hash. 
-	 */
-	protected Entity tagBasedSearch(final Entity entity, final Integer tag, final int radius, final int x1, final int y1, final int z1) {
-		// Get the last entity so when know when to stop
-		ArrayDeque<Entity> entities = tagMap.get(tag);
-		Entity last = entities.peekLast();
-		
-		// Scan all entities of the given type, since we are using the queue
-		// we need to be aware that it may contain stale entities in it. We
-		// will know if we are looking at one because it will not be present
-		// in the entity map any more.
-		Entity current = null;
-		while (!last.equals(current)) {
-			// Get an entity to check
-			current = entities.pop();
-			
-			// Get it's location, if the location is null then do nothing
-			LocationAndIndex lai = entityMap.get(current);
-			if (lai != null) {
-				// Make sure valid entities are restored
-				entities.add(current);
-				
-				// Press on if we are looking at the parent entity
-				if (entity.equals(current)) {
-					continue;
-				}
-				
-				// Calculate the Euclidean distance, d = sqrt((x1 - x2)^2 + (y1 - y2)^2 + (z1 - z2)^2)
-				int x = x1 - lai.location[0];
-				int y = y1 - lai.location[1];
-				int z = z1 - lai.location[2];
-				double d = Math.sqrt(x*x + y*y + z*z);
-				
-				// Check and return if we are good
-				if (d <= radius) {
-					return current;
-				}
+			SphereOffsets offsets = SphereOffsets.get(radius);
+			if (preferGeometric(tagLists[tag].size(), offsets.size)) {
+				return distanceBasedSearch(id, tag, offsets, x1, y1, z1);
 			}
 		}
-		return null;
+
+		// If there are fewer entities of the type than cells to probe, just scan them;
+		// otherwise, let the cell list narrow things down to the neighborhood
+		if (radius > 0 && tagLists[tag].size() <= CELL_PROBES) {
+			return tagBasedSearch(id, tag, radius, x1, y1, z1);
+		}
+		return cellBasedSearch(id, tag, radius, x1, y1, z1);
 	}
-	
+
 	/**
-	 * Search for an entity with the given tag, based upon the geometry of the system. 
-	 * 
-	 * Overall this code is O(n^3) where n is the number of points in the integer sphere,
-	 * but in practice, it may return faster if there is a match close to the origin.
+	 * Search for an entity with the given tag, using the cell list. Since the cells
+	 * are at least as large as the radius, only the 27 cells around the origin need
+	 * to be checked. Our own cell is checked first since it is the only one that can
+	 * contain colocated entities, and the only one checked when the radius is zero.
 	 */
-	protected Entity distanceBasedSearch(Entity entity, int tag, int radius, int x1, int y1, int z1) {		
-		// The first search is based upon a cube around the entity's point in 
-		// space, so we need to find how big the cube that can fit in the circle
-		double hypotenuse = Math.sqrt(radius * radius + radius * radius);
-		int limit = radius - (int)Math.sqrt(Math.pow(hypotenuse - radius, 2) / 2);
-			
-		// Check increasing cubes based on the origin until the limit, the step loop
-		// defines the cube's size, while the inner two loops trace the surfaces
-		for (int step = 1; step < limit; step++) {
-			int x2 = x1 + step;
-			for (int y2 = y1 + 1; y2 < y1 + step; y2++) {
-				for (int z2 = z1 + 1; z2 < z1 + step; z2++) {
-					
-					// These next three loops allow us to translate along 
-					// all of the quadrants of the cube
-					for (int xsign = -1; xsign <= 1; xsign += 2) {
-						for (int ysign = -1; ysign <= 1; ysign += 2) {
-							for (int zsign = -1; zsign <= 1; zsign += 2) {
-								
-								// Now we get to actually check the point
-								Entity result = checkPoint(entity, tag, x2 * xsign, y2 * ysign, z2 * zsign);
-								if (result != null) {
-									return result;
-								}			
-							}	
-						}	
-					}
-					
-				}
-			}
-		}
-		
-		// Pre-build the list of points defining the geometry
-		int size = 2 * (radius - limit) + 2;
-		int values[] = new int[size];
-		int index = 0;
-		for (int value = limit; value <= radius; value++) {
-			values[index++] = value;
-			values[index++] = -value;
+	protected int cellBasedSearch(final int id, final int tag, final int radius, final int x1, final int y1, final int z1) {
+		// Note the cells of the tag and the cell of the origin
+		Long2ObjectOpenHashMap<IntArrayList> cells = cellMap[tag];
+		int cx = x1 / cellSize, cy = y1 / cellSize, cz = z1 / cellSize;
+
+		// Check our cell
+		int match = searchList(cells.get(pack(cx, cy, cz)), id, radius, x1, y1, z1);
+		if (match != EntityStore.NONE || radius == 0) {
+			return match;
 		}
-		
-		// Check the remainder of the sphere, we need to check the points to 
-		// make sure they are part of the sphere though
-		for (int x2 = 0; x2 < size; x2++) {
-			for (int y2 = 0; y2 < size; y2++) {
-				for(int z2 = 0; z2 < size; z2++) {
-					
-					// First we need to know if the point is in the sphere, 
-					// check this by the Euclidean distance
-					int x = x1 - values[x2];
-					int y = y1 - values[y2];
-					int z = z1 - values[z2];
-					double d = Math.sqrt(x*x + y*y + z*z);
-					
-					// It's not, so press on
-					if (d > radius) {
+
+		// Probe the rest of the neighborhood
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dz = -1; dz <= 1; dz++) {
+					if ((dx | dy | dz) == 0) {
 						continue;
 					}
-					
-					// It is, so check the point
-					Entity result = checkPoint(entity, tag, x2, y2, z2);
-					if (result != null) {
-						return result;
+					match = searchList(cells.get(pack(cx + dx, cy + dy, cz + dz)), id, radius, x1, y1, z1);
+					if (match != EntityStore.NONE) {
+						return match;
 					}
 				}
 			}
 		}
-		
+
 		// Nothing was found
-		return null;
+		return EntityStore.NONE;
 	}
 
 	/**
-	 * Check that the entity at the given point is a valid match, returns true if it is, false otherwise.
+	 * Search for an entity with the given tag, based upon the geometry of the system.
+	 * The points of the sphere are visited from the closest to the furthest, so the
+	 * match returned is the closest one to the origin.
 	 */
-	private Entity checkPoint(Entity entity, int tag, int x, int y, int z) {
-		int hash = hashCoordinates(x, y, z);
-		Bag bag = latticeMap.get(hash);
-		
-		// Must be something there
-		if (bag == null) {
-			return null;
-		}
-		
-		// Check the entities in the location
-		int size = bag.numObjs;
-		for (int ndx = 0; ndx < size; ndx++) {
-			// Can't be the same entity
-			Entity check = (Entity)bag.get(ndx);
-			if (check.equals(entity)) {
+	protected int distanceBasedSearch(final int id, final int tag, final SphereOffsets offsets, final int x1, final int y1, final int z1) {
+		Long2IntOpenHashMap points = getPoints(tag);
+		final int[] ox = offsets.x, oy = offsets.y, oz = offsets.z;
+		for (int ndx = 0; ndx < offsets.size; ndx++) {
+			// Skip points that fall outside of the lattice
+			int x = x1 + ox[ndx], y = y1 + oy[ndx], z = z1 + oz[ndx];
+			if (((x | y | z) & ~PACK_MASK) != 0) {
 				continue;
 			}
-			
-			// Do the tags match?			
-			if (check.getEntityTypeTag() == tag) {
-				return check;
+
+			// Check the entities at the point
+			for (int check = points.get(pack(x, y, z)); check != EntityStore.NONE; check = nextAtPoint[check]) {
+				if (check != id) {
+					return check;
+				}
 			}
 		}
-		
-		// Nothing found
-		return null;		
+
+		// Nothing was found
+		return EntityStore.NONE;
 	}
 
 	/**
-	 * Get all of the objects in the lattice.
+	 * Returns true if visiting the points of the sphere is expected to be cheaper than
+	 * scanning the entities in the neighboring cells. Assuming the entities are evenly
+	 * distributed, the density gives both the number of points that need to be visited
+	 * before a match is likely and the number of entities in the cells.
 	 */
-	public Set<Entity> getAllObjects() {
-		return entityMap.keySet();	
+	private boolean preferGeometric(int count, int points) {
+		double volume = (maxX + 1.0) * (maxY + 1.0) * (maxZ + 1.0);
+		double density = count / volume;
+		double probes = Math.min(points, 1 / density);
+		double scanned = Math.min(count, density * CELL_PROBES * cellSize * cellSize * cellSize);
+		return probes * POINT_PROBE_COST < scanned;
 	}
-			
+
 	/**
 	 * Get the all of the objects that share the location of the given object.
-	 * 
-	 * @param object To base the location on.
-	 * @return The bag of objects, or null if the original object was not found.
+	 *
+	 * @param id of the object to base the location on.
+	 * @return The bag of objects, including the original object.
 	 */
-	public Bag getColocatedObjects(final Entity object) {
-		LocationAndIndex lai = entityMap.get(object);
-		return (lai == null) ? null : lai.colocated;
+	@Override
+	public Bag getColocatedObjects(final int id) {
+		return getObjectsAtLocation(new int[] { store.x[id], store.y[id], store.z[id] });
 	}
-	
+
 	/**
-	 * Get the first entity with the given tag.
-	 * 
-	 * @param tag used to identify the entity.
-	 * @return The first entity of the given type, or null if there are none.
+	 * Get all of the objects at the given location.
+	 *
+	 * @param location To retrieve the objects from.
+	 * @return The bag of objects or null.
 	 */
-	public Entity getFirstEntity(final int tag) {
-		// Note the correct tag map based upon the tag
-		ArrayDeque<Entity> entities = tagMap.get(tag);
-		
-		// Stale references can be left behind, so make sure the first entity we peek
-		// still has a valid LAI present
-		LocationAndIndex lai = null;
-		while (lai == null && entities.size() > 0) {
-			lai = entityMap.get(entities.peek());
-			if (lai == null) {
-				entities.pop();
+	public Bag getObjectsAtLocation(final int[] location) {
+		// Check the cell containing the location for each of the tags
+		Bag bag = null;
+		long key = getCellKey(location[0], location[1], location[2]);
+		for (Long2ObjectOpenHashMap<IntArrayList> cells : cellMap) {
+			IntArrayList cell = cells.get(key);
+			if (cell == null) {
+				continue;
+			}
+			for (int ndx = 0; ndx < cell.size(); ndx++) {
+				int id = cell.getInt(ndx);
+				if (store.x[id] == location[0] && store.y[id] == location[1] && store.z[id] == location[2]) {
+					bag = (bag == null) ? new Bag(INITIAL_BAG_SIZE) : bag;
+					bag.add(store.get(id));
+				}
 			}
 		}
-		
-		// Return the first entity in the queue.
-		return entities.peek();
+		return bag;
 	}
-	
+
 	/**
-	 * Get the location of the given object.
-	 * 
-	 * @param object To retrieve the location of.
-	 * @return The location as Int3D or null if it does not exist.e
+	 * Pack the cell containing the coordinates into a single key.
 	 */
-	public int[] getObjectLocation(final Entity object) {
-		LocationAndIndex lai = entityMap.get(object);
-		return (lai == null) ? null : lai.location;
+	private long getCellKey(int x, int y, int z) {
+		return pack(x / cellSize, y / cellSize, z / cellSize);
 	}
-	
+
 	/**
-	 * Get all of the objects at the given location.
-	 * 
-	 * @param location To retrieve the objects from.
-	 * @return The bag of objects or null.
+	 * Pack the coordinates provided into a single key, 21-bits per axis. The packing is
+	 * lossless for coordinates in the lattice, so unlike a hash, distinct points never
+	 * share a key.
 	 */
-	public Bag getObjectsAtLocation(final int[] location) {
-		Integer hash = hashCoordinates(location[0], location[1], location[2]);
-		return latticeMap.get(hash);
+	private static long pack(int x, int y, int z) {
+		return ((x & PACK_MASK) << (2 * PACK_BITS)) | ((y & PACK_MASK) << PACK_BITS) | (z & PACK_MASK);
+	}
+
+	@Override
+	protected void insert(int id) {
+		updateExtents(store.x[id], store.y[id], store.z[id]);
+		addToCell(id);
+		if (hasPoints) {
+			addToPoint(id);
+		}
+	}
+
+	@Override
+	protected void delete(int id) {
+		removeFromCell(id);
+		if (hasPoints) {
+			removeFromPoint(id);
+		}
 	}
-	
+
+	@Override
+	protected void move(final int id, final int x, final int y, final int z) {
+		updateExtents(x, y, z);
+
+		// The cell only needs to change if we left it
+		boolean moved = (getCellKey(x, y, z) != getCellKey(store.x[id], store.y[id], store.z[id]));
+		if (moved) {
+			removeFromCell(id);
+		}
+		boolean points = hasPoints;
+		if (points) {
+			removeFromPoint(id);
+		}
+		store.x[id] = x;
+		store.y[id] = y;
+		store.z[id] = z;
+		if (moved) {
+			addToCell(id);
+		}
+		if (points) {
+			addToPoint(id);
+		}
+	}
+
 	/**
-	 * Hash the x, y, z coordinates provided based upon the internal hash table allocation.
-	 * 
-	 *  Based upon Teschner et al., 2003
+	 * Get the first entity at each point for the tag, building the list if this is the
+	 * first time the tag has been searched geometrically.
 	 */
-	private Integer hashCoordinates(int x, int y, int z) {
-		final int p1 = 73856093, p2 = 19349663, p3 = 83492791;
-		return (x * p1 ^ y * p2 ^ z * p3) % allocation;
+	private Long2IntOpenHashMap getPoints(int tag) {
+		Long2IntOpenHashMap points = pointMap[tag];
+		if (points != null) {
+			return points;
+		}
+
+		// Allocate the links between colocated entities for the whole store
+		if (nextAtPoint == null) {
+			int size = store.x.length;
+			nextAtPoint = new int[size];
+			previousAtPoint = new int[size];
+		}
+
+		// Add all of the entities with the tag
+		IntArrayList entities = tagLists[tag];
+		points = new Long2IntOpenHashMap(entities.size());
+		points.defaultReturnValue(EntityStore.NONE);
+		pointMap[tag] = points;
+		hasPoints = true;
+		for (int ndx = 0; ndx < entities.size(); ndx++) {
+			addToPoint(entities.getInt(ndx));
+		}
+		return points;
 	}
-	
+
 	/**
-	 * Remove the object if it exists. 
-	 * 
-	 * @param object to be removed.
-	 * @return The location of the object, or null if it doesn't exist.
+	 * Add the entity to the front of the list for its point, if its tag has a point list.
 	 */
-	public int[] remove(final Entity object) {
-		
-		// Start by removing the object finding out where it is located
-		LocationAndIndex lai = entityMap.remove(object);
-		if (lai == null) {
-			// This should never actually occur
-			throw new IllegalStateException("Attempted to remove an object not in the entityMap.");
+	private void addToPoint(int id) {
+		Long2IntOpenHashMap points = pointMap[store.tag[id]];
+		if (points == null) {
+			return;
 		}
-				
-		// Remove from the the location lattice
-		Bag bag = lai.colocated;
-		bag.remove(object);
-		
-		// If nothing is left in the bag, clear it's memory
-		int count = bag.numObjs;
-		if (count == 0) {
-			bag.clear();
+		if (id >= nextAtPoint.length) {
+			int size = Math.max(id + 1, store.x.length);
+			nextAtPoint = Arrays.copyOf(nextAtPoint, size);
+			previousAtPoint = Arrays.copyOf(previousAtPoint, size);
 		}
 
-		// Shrink oversized bags
-        if (count >= MIN_BAG_SIZE && count * LARGE_BAG_RATIO <= bag.objs.length) {
-        	bag.shrink(count * REPLACEMENT_BAG_RATIO); 
+		long key = pack(store.x[id], store.y[id], store.z[id]);
+		int first = points.put(key, id);
+		nextAtPoint[id] = first;
+		previousAtPoint[id] = EntityStore.NONE;
+		if (first != EntityStore.NONE) {
+			previousAtPoint[first] = id;
 		}
-		
-		// Return the location, be sure to release memory
-        int[] location = lai.location;
-        lai = null;
-        return location;
 	}
-	
+
 	/**
-	 * Add or update the location of the object in the lattice.
-	 * 
-	 * @param object to be added or updated.
-	 * @param location of the object in the lattice.
+	 * Remove the entity from the list for its point, if its tag has a point list.
 	 */
-	public void setObjectLocation(final Entity object, final int[] location) {
-		// Start by checking our conditions		
-		if (object == null) {
-			throw new IllegalStateException("Attempting to insert null into lattice.");
+	private void removeFromPoint(int id) {
+		Long2IntOpenHashMap points = pointMap[store.tag[id]];
+		if (points == null) {
+			return;
 		}
-		
-		// Create an empty bag
-		Bag bag = null;		
-		
-		// Check to see if the object already exists
-		LocationAndIndex lai = entityMap.get(object);
-		
-		if (lai == null) {
-			// No location returned, must be a new object
-			lai = new LocationAndIndex();
-			lai.location = location;
-			entityMap.put(object, lai);
-			tagMap.get(object.getEntityTypeTag()).add(object);
+
+		int previous = previousAtPoint[id], next = nextAtPoint[id];
+		if (previous != EntityStore.NONE) {
+			nextAtPoint[previous] = next;
+		} else if (next != EntityStore.NONE) {
+			points.put(pack(store.x[id], store.y[id], store.z[id]), next);
 		} else {
-			// Return if there is no update
-			if (lai.location[0] == location[0] && lai.location[1] == location[1] && lai.location[2] == location[2]) {
-				return;
-			}
-			
-			// We have a location, so we are updating
-			bag = lai.colocated;
-			bag.remove(object);
-			
-			// Clear empty bags
-			int count = bag.numObjs;
-			if (count == 0) {
-				bag.clear();
-			}
+			points.remove(pack(store.x[id], store.y[id], store.z[id]));
+		}
+		if (next != EntityStore.NONE) {
+			previousAtPoint[next] = previous;
+		}
+	}
 
-			// Shrink oversized bags
-            if (count >= MIN_BAG_SIZE && count * LARGE_BAG_RATIO <= bag.objs.length) {
-            	bag.shrink(count * REPLACEMENT_BAG_RATIO); 
-			}
-			
-			// Update our location
-            lai.location = location;
+	/**
+	 * Update the extents of the locations seen.
+	 */
+	private void updateExtents(int x, int y, int z) {
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
+		maxZ = Math.max(maxZ, z);
+	}
+
+	/**
+	 * Add the entity to the cell for its location.
+	 */
+	private void addToCell(int id) {
+		Long2ObjectOpenHashMap<IntArrayList> cells = cellMap[store.tag[id]];
+		long key = getCellKey(store.x[id], store.y[id], store.z[id]);
+		IntArrayList cell = cells.get(key);
+		if (cell == null) {
+			cell = spareCells.isEmpty() ? new IntArrayList(INITIAL_BAG_SIZE) : spareCells.pop();
+			cells.put(key, cell);
 		}
-		
-		// Update the bag in the lattice at the new location
-		Integer hash = hashCoordinates(location[0], location[1], location[2]);
-		bag = latticeMap.get(hash);
-		if (bag == null) {
-			bag = new Bag(INITIAL_BAG_SIZE);
-			latticeMap.put(hash, bag);
-		} 
-		bag.add(object);
-		lai.colocated = bag;
+		store.cellSlot[id] = cell.size();
+		cell.add(id);
 	}
-			
+
 	/**
-	 * Helper class that provides the location of the object in the lattice and
-	 * the index of it in a bag.
+	 * Remove the object from its cell by swapping the last entity into its slot, empty cells
+	 * are dropped from the cell list and kept as spares, and oversized cells are shrunk.
 	 */
-	private static class LocationAndIndex {
-		private Bag colocated;
-		private int[] location;
+	private void removeFromCell(int id) {
+		Long2ObjectOpenHashMap<IntArrayList> cells = cellMap[store.tag[id]];
+		long key = getCellKey(store.x[id], store.y[id], store.z[id]);
+		IntArrayList cell = cells.get(key);
+
+		int last = cell.removeInt(cell.size() - 1);
+		int count = cell.size();
+		if (last != id) {
+			cell.set(store.cellSlot[id], last);
+			store.cellSlot[last] = store.cellSlot[id];
+		}
+
+		if (count == 0) {
+			cells.remove(key);
+			if (spareCells.size() < SPARE_BAGS) {
+				spareCells.push(cell);
+			}
+		} else if (count >= MIN_BAG_SIZE && count * LARGE_BAG_RATIO <= cell.elements().length) {
+			cell.trim(count * REPLACEMENT_BAG_RATIO);
+		}
 	}
 }
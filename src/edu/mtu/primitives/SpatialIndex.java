@@ -0,0 +1,121 @@
+package edu.mtu.primitives;
+
+import sim.util.Bag;
+
+/**
+ * A spatial index tracks the location of tagged entities in an integer volume and
+ * supports finding entities of a given tag near a point. Entities are addressed by
+ * the id assigned to them by the index's EntityStore when they are added.
+ */
+public interface SpatialIndex {
+
+	/**
+	 * Add the entity to the index at the given location.
+	 *
+	 * @param entity to be added.
+	 * @return The id assigned to the entity.
+	 */
+	public int add(Entity entity, int x, int y, int z);
+
+	/**
+	 * Add the listener to be notified as entities are added, moved, and removed.
+	 */
+	public void addListener(SpatialIndexListener listener);
+
+	/**
+	 * Find the first entity with the given tag in the radius from the given entity.
+	 *
+	 * @param id of the entity to base the search on.
+	 * @param tag to search for.
+	 * @param radius defining the sphere.
+	 * @return The id of the first entity with a matching tag in the sphere, or EntityStore.NONE.
+	 */
+	public int findFirstByTag(int id, int tag, int radius);
+
+	/**
+	 * Get the all of the objects that share the location of the given object.
+	 *
+	 * @param id of the object to base the location on.
+	 * @return The bag of objects, including the original object.
+	 */
+	public Bag getColocatedObjects(int id);
+
+	/**
+	 * Get the entity at the given index in the list of entities with the tag, since the list
+	 * is reordered as entities are removed this is mostly useful for sampling.
+	 *
+	 * @param tag used to identify the entity.
+	 * @param index in the list, in the range [0, getEntityCount(tag)).
+	 * @return The id of the entity.
+	 */
+	public int getEntity(int tag, int index);
+
+	/**
+	 * Swap the entities at the two indices in the list of entities with the tag, this allows
+	 * a random sample to be moved to the end of the list so it can be passed to removeN.
+	 *
+	 * @param tag used to identify the entities.
+	 * @param one index in the list, in the range [0, getEntityCount(tag)).
+	 * @param two index in the list, in the range [0, getEntityCount(tag)).
+	 */
+	public void swapEntities(int tag, int one, int two);
+
+	/**
+	 * Get the number of entities with the given tag.
+	 */
+	public int getEntityCount(int tag);
+
+	/**
+	 * Get the tags that currently have entities, bit (tag % 64) of word (tag / 64) is set 
+	 * when there is at least one entity with the tag. The array is kept up to date by the 
+	 * index and must not be modified.
+	 */
+	public long[] getLiveTags();
+
+	/**
+	 * Get the first entity with the given tag.
+	 *
+	 * @param tag used to identify the entity.
+	 * @return The id of the first entity of the given type, or EntityStore.NONE if there are none.
+	 */
+	public int getFirstEntity(int tag);
+
+	/**
+	 * Get the location of the given object.
+	 *
+	 * @param id of the object to retrieve the location of.
+	 * @return A copy of the location.
+	 */
+	public int[] getObjectLocation(int id);
+
+	/**
+	 * Get the store that contains the entities of the index.
+	 */
+	public EntityStore getStore();
+
+	/**
+	 * Remove the object if it exists.
+	 *
+	 * @param id of the object to be removed.
+	 */
+	public void remove(int id);
+
+	/**
+	 * Remove up to n of the objects with the given tag, the last ones in the list for the tag
+	 * are taken so the list is truncated once rather than having objects swapped into the
+	 * freed slots.
+	 *
+	 * @param tag used to identify the objects.
+	 * @param n The number of objects to remove.
+	 * @return The number removed, less than n if there were not enough objects.
+	 */
+	public int removeN(int tag, int n);
+
+	/**
+	 * Update the location of the object in the index.
+	 *
+	 * @param id of the object to be updated.
+	 * @param x, y, z location of the object.
+	 */
+	public void setObjectLocation(int id, int x, int y, int z);
+}
@@ -0,0 +1,51 @@
+package edu.mtu.primitives;
+
+/**
+ * Factory for the spatial indices that can be used by the reactor.
+ */
+public class SpatialIndexFactory {
+
+	// Names of the indices, as given on the command line
+	public final static String KDTREE = "kdtree";
+	public final static String LATTICE = "lattice";
+	public final static String OCTREE = "octree";
+
+	/**
+	 * Get the approximate bytes used per entity by the spatial index with the given
+	 * name, including the store.
+	 */
+	public static int getBytesPerEntity(String name) {
+		switch (name) {
+		case KDTREE:
+			return KdTree.BYTES_PER_ENTITY;
+		case LATTICE:
+			return Sparse3DLattice.BYTES_PER_ENTITY;
+		case OCTREE:
+			return Octree.BYTES_PER_ENTITY;
+		default:
+			throw new IllegalArgumentException("Unknown spatial index, " + name);
+		}
+	}
+
+	/**
+	 * Create the spatial index with the given name.
+	 *
+	 * @param name of the index to create.
+	 * @param maxEntities The maximum number of entities the index is expected to contain.
+	 * @param tags The number of tags, the entities placed in the index must have a tag in [0, tags).
+	 * @param maxRadius The largest search radius that will be used with the index.
+	 * @return The initialized index.
+	 */
+	public static SpatialIndex create(String name, int maxEntities, int tags, int maxRadius) {
+		switch (name) {
+		case KDTREE:
+			return new KdTree(maxEntities, tags, maxRadius);
+		case LATTICE:
+			return Sparse3DLattice.create3DLattice(maxEntities, tags, maxRadius);
+		case OCTREE:
+			return new Octree(maxEntities, tags);
+		default:
+			throw new IllegalArgumentException("Unknown spatial index, " + name);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package edu.mtu.primitives;
+
+/**
+ * Listener that is notified as entities are added to, moved in, and removed from a spatial index,
+ * this allows statistics about the entities to be maintained incrementally rather than
+ * by scanning the index. The listener is called on the thread updating the index and
+ * should be quick about it.
+ */
+public interface SpatialIndexListener {
+
+	/**
+	 * The entity has been added to the index, its location and tag are in the store.
+	 */
+	public void added(int id);
+
+	/**
+	 * The entity has been moved, its new location is in the store.
+	 * 
+	 * @param x, y, z The location the entity was moved from.
+	 */
+	public void moved(int id, int x, int y, int z);
+
+	/**
+	 * The entity is about to be removed from the index, its location and tag are still in the store.
+	 */
+	public void removed(int id);
+}
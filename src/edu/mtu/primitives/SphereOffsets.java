@@ -0,0 +1,96 @@
+package edu.mtu.primitives;
+
+import java.util.Arrays;
+
+/**
+ * The offsets of the integer points in a sphere, sorted by their distance from
+ * the center so that a geometric search visits the closest points first. Since
+ * the interaction radii come from a small fixed set the tables are prepared once
+ * per radius and shared.
+ *
+ * The number of points grows with the cube of the radius, so tables are only
+ * built for radii up to MAX_RADIUS, larger searches need to use the cells.
+ */
+public class SphereOffsets {
+
+	/**
+	 * The largest radius a table is built for, about 58,000 points.
+	 */
+	public final static int MAX_RADIUS = 24;
+
+	// The tables that have been prepared, indexed by radius
+	private final static SphereOffsets[] tables = new SphereOffsets[MAX_RADIUS + 1];
+
+	// The offsets, sorted by distance
+	public final int[] x;
+	public final int[] y;
+	public final int[] z;
+
+	/**
+	 * Number of points in the sphere.
+	 */
+	public final int size;
+
+	/**
+	 * Constructor, build the table of offsets for the radius.
+	 */
+	private SphereOffsets(int radius) {
+		// Find the points in the sphere, noting the squared distance and coordinates
+		long limit = (long)radius * radius;
+		int side = 2 * radius + 1;
+		long[] points = new long[side * side * side];
+		int count = 0;
+		for (int dx = -radius; dx <= radius; dx++) {
+			for (int dy = -radius; dy <= radius; dy++) {
+				for (int dz = -radius; dz <= radius; dz++) {
+					long distance = dx*dx + dy*dy + dz*dz;
+					if (distance <= limit) {
+						// Sort on the distance, ties are broken by the packed coordinates
+						int index = ((dx + radius) * side + (dy + radius)) * side + (dz + radius);
+						points[count++] = (distance << 32) | index;
+					}
+				}
+			}
+		}
+		Arrays.sort(points, 0, count);
+
+		// Unpack the coordinates
+		size = count;
+		x = new int[count];
+		y = new int[count];
+		z = new int[count];
+		for (int ndx = 0; ndx < count; ndx++) {
+			int index = (int)points[ndx];
+			x[ndx] = index / (side * side) - radius;
+			y[ndx] = (index / side) % side - radius;
+			z[ndx] = index % side - radius;
+		}
+	}
+
+	/**
+	 * Get the table for the radius, preparing it if need be.
+	 *
+	 * @param radius of the sphere.
+	 * @return The table or null if the radius is too large.
+	 */
+	public static SphereOffsets get(int radius) {
+		if (radius < 0 || radius > MAX_RADIUS) {
+			return null;
+		}
+		if (tables[radius] == null) {
+			tables[radius] = new SphereOffsets(radius);
+		}
+		return tables[radius];
+	}
+
+	/**
+	 * Prepare the table for the radius, this should be called for each of the
+	 * interaction radii when the reactions are loaded.
+	 *
+	 * @param radius of the sphere.
+	 * @return True if a table is available, false if the radius is too large.
+	 */
+	public static boolean prepare(int radius) {
+		return get(radius) != null;
+	}
+}
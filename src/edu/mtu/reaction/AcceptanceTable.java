@@ -0,0 +1,39 @@
+package edu.mtu.reaction;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.math3.special.Erf;
+
+/**
+ * The probability of accepting an encounter, erfc(d / radius), tabulated by the squared
+ * distance. Since locations are integers the squared distance between two molecules is
+ * an integer no larger than radius^2 once a search has found them, so every value that
+ * can be needed is computed when the reactions are loaded.
+ *
+ * The values are the same as computing them directly, so the dice rolls are unchanged.
+ */
+public class AcceptanceTable {
+
+	// The tables that have been prepared, keyed by radius
+	private final static Map<Integer, double[]> tables = new HashMap<Integer, double[]>();
+
+	/**
+	 * Get the table for the radius, preparing it if need be.
+	 *
+	 * @param radius of the interaction.
+	 * @return The acceptance probabilities indexed by the squared distance, [0, radius^2].
+	 */
+	public static double[] get(int radius) {
+		double[] table = tables.get(radius);
+		if (table == null) {
+			int size = radius * radius + 1;
+			table = new double[size];
+			for (int ndx = 0; ndx < size; ndx++) {
+				table[ndx] = Erf.erfc(Math.sqrt(ndx) / radius);
+			}
+			tables.put(radius, table);
+		}
+		return table;
+	}
+}
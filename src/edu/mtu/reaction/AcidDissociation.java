@@ -26,7 +26,7 @@ public class AcidDissociation extends ChemicalEquation implements Cloneable {
 		AcidDissociation copy = new AcidDissociation();
 		copy.products = this.products.clone();
 		copy.reactants = this.reactants.clone();
-		copy.reactantHashes = this.reactantHashes.clone();
+		copy.reactantIds = this.reactantIds.clone();
 		copy.pKa = this.pKa;
 		return copy;
 	}
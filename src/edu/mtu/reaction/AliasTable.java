@@ -0,0 +1,72 @@
+package edu.mtu.reaction;
+
+/**
+ * Walker alias table for selecting one of a fixed set of outcomes with the given odds
+ * using a single uniform value, in constant time and without allocating. The table is
+ * built with Vose's method when the reactions are loaded and shared by every molecule
+ * that needs it.
+ */
+public class AliasTable {
+
+	// The odds of keeping the column, and the outcome to use otherwise
+	private final double[] probability;
+	private final int[] alias;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param odds of each outcome, these must sum to one.
+	 */
+	public AliasTable(double[] odds) {
+		int size = odds.length;
+		probability = new double[size];
+		alias = new int[size];
+
+		// Scale the odds so the average is one, then split the columns into those
+		// that are under and over full
+		double[] scaled = new double[size];
+		int[] small = new int[size], large = new int[size];
+		int smallCount = 0, largeCount = 0;
+		for (int ndx = 0; ndx < size; ndx++) {
+			scaled[ndx] = odds[ndx] * size;
+			if (scaled[ndx] < 1) {
+				small[smallCount++] = ndx;
+			} else {
+				large[largeCount++] = ndx;
+			}
+		}
+
+		// Fill each under full column from an over full one
+		while (smallCount > 0 && largeCount > 0) {
+			int less = small[--smallCount], more = large[--largeCount];
+			probability[less] = scaled[less];
+			alias[less] = more;
+			scaled[more] = (scaled[more] + scaled[less]) - 1;
+			if (scaled[more] < 1) {
+				small[smallCount++] = more;
+			} else {
+				large[largeCount++] = more;
+			}
+		}
+
+		// What remains is full, up to rounding
+		while (largeCount > 0) {
+			probability[large[--largeCount]] = 1;
+		}
+		while (smallCount > 0) {
+			probability[small[--smallCount]] = 1;
+		}
+	}
+
+	/**
+	 * Select an outcome.
+	 *
+	 * @param value uniformly distributed in [0, 1).
+	 * @return The index of the outcome.
+	 */
+	public int select(double value) {
+		double scaled = value * probability.length;
+		int column = (int)scaled;
+		return (scaled - column < probability[column]) ? column : alias[column];
+	}
+}
@@ -100,7 +100,7 @@ public class BasicReaction extends ChemicalEquation implements Cloneable {
 		BasicReaction copy = new BasicReaction();
 		copy.products = this.products.clone();
 		copy.reactants = this.reactants.clone();
-		copy.reactantHashes = this.reactantHashes.clone();		
+		copy.reactantIds = this.reactantIds.clone();		
 		copy.ratio = this.ratio;
 		copy.k = this.k;
 		return copy;
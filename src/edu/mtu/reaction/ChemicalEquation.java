@@ -4,7 +4,6 @@ import java.util.Arrays;
 import java.util.List;
 
 import edu.mtu.compound.Molecule;
-import edu.mtu.util.FnvHash;
 
 /**
  * Base class for all chemical equations, contains most of the relevant
@@ -13,7 +12,12 @@ import edu.mtu.util.FnvHash;
 public abstract class ChemicalEquation {
 	protected String[] products;
 	protected String[] reactants;
-	protected int[] reactantHashes;
+	
+	// The species ids of the reactants, these are assigned by the registry when loaded
+	protected int[] reactantIds;
+	
+	// The compiled products, this is prepared by the registry when loaded
+	protected ProductPlan plan;
 	
 	/**
 	 * Check to see if the reactants are part of this reaction description.
@@ -27,9 +31,9 @@ public abstract class ChemicalEquation {
 			// Two molecules are invalid
 			if (a != null && b != null) return false;							
 			// Check that a is equal, assume b is null
-			if (a != null && a.sameEntity(reactantHashes[0])) return true;		
+			if (a != null && a.sameEntity(reactantIds[0])) return true;		
 			// Check that b is equal, assume as is null
-			if (b.sameEntity(reactantHashes[0])) return true;					
+			if (b.sameEntity(reactantIds[0])) return true;					
 			
 			// Not a match
 			return false;														
@@ -38,9 +42,9 @@ public abstract class ChemicalEquation {
 		// Should have two molecules now
 		if (a == null || b == null) return false;
 		// Check same order as array
-		if (a.sameEntity(reactantHashes[0]) && b.sameEntity(reactantHashes[1])) return true;
+		if (a.sameEntity(reactantIds[0]) && b.sameEntity(reactantIds[1])) return true;
 		// Check reverse order of array
-		if (b.sameEntity(reactantHashes[0]) && a.sameEntity(reactantHashes[1])) return true;
+		if (b.sameEntity(reactantIds[0]) && a.sameEntity(reactantIds[1])) return true;
 		
 		// Not a match
 		return false;
@@ -65,6 +69,13 @@ public abstract class ChemicalEquation {
 		return products;
 	}
 
+	/**
+	 * Get the compiled products of this equation, null until the registry is loaded.
+	 */
+	public ProductPlan getProductPlan() {
+		return plan;
+	}
+
 	/**
 	 * Get the reactants of this equation.
 	 */
@@ -80,13 +91,11 @@ public abstract class ChemicalEquation {
 			throw new IllegalArgumentException("The number of reactants should not exceed two.");
 		}
 				
-		// Note the reactants and their hash
+		// Note the reactants, the species ids are not known until the registry is loaded
 		reactants = new String[value.size()];
 		reactants = value.toArray(reactants);
-		reactantHashes = new int[reactants.length];
-		for (int ndx = 0; ndx < reactants.length; ndx++) {
-			reactantHashes[ndx] = FnvHash.fnv1a32(reactants[ndx]);
-		}
+		reactantIds = new int[reactants.length];
+		Arrays.fill(reactantIds, ReactionRegistry.UNREGISTERED);
 	}
 	
 	/**
@@ -0,0 +1,50 @@
+package edu.mtu.reaction;
+
+/**
+ * The reactions that fire when a species meets a given partner, compiled once when
+ * the registry is loaded so that firing a reaction does not require searching the
+ * reaction list. When more than one reaction matches the species disproportionates.
+ */
+public class CompiledReactions {
+
+	// The matching reactions, this must not be modified
+	public final BasicReaction[] reactions;
+
+	// True if there is more than one matching reaction
+	public final boolean disproportionation;
+
+	// The bit for each of the reactions, a disproportionating molecule notes
+	// the reactions it has consumed against this
+	public final long branches;
+
+	// Table for selecting one of the reactions by their ratios, or null if the
+	// ratios are all one and every reaction takes place
+	public final AliasTable selection;
+
+	public CompiledReactions(BasicReaction[] reactions) {
+		this.reactions = reactions;
+		this.disproportionation = (reactions.length > 1);
+		if (disproportionation && reactions.length > Long.SIZE) {
+			throw new IllegalArgumentException("Disproportionation of '" + reactions[0].getReactants()[0] + "' has more than " + Long.SIZE + " reactions.");
+		}
+		this.branches = (reactions.length == Long.SIZE) ? -1L : (1L << reactions.length) - 1;
+
+		// Note the odds, these are only used if one of them isn't certain
+		boolean probabilistic = false;
+		double[] odds = new double[reactions.length];
+		double total = 0;
+		for (int ndx = 0; ndx < reactions.length; ndx++) {
+			odds[ndx] = reactions[ndx].getReactionRatio();
+			probabilistic = probabilistic || (odds[ndx] < 1);
+			total += odds[ndx];
+		}
+		if (!disproportionation || !probabilistic) {
+			this.selection = null;
+			return;
+		}
+		if (total != 1.0) {
+			throw new IllegalArgumentException("Total odds of the reaction '" + reactions[0].getReactants()[0] + "' must be 1.0");
+		}
+		this.selection = new AliasTable(odds);
+	}
+}
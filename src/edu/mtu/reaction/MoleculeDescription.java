@@ -1,6 +1,10 @@
-package edu.mtu.reaction;
+ package edu.mtu.reaction;
 
 public class MoleculeDescription {
+	// The formula and species id are shared by all molecules of the species
+	public final String formula;
+	public final int speciesId;
+	
 	public boolean hasBimolecular;
 	public boolean hasPhotolysis;
 	public boolean hasUnimolecular;
@@ -10,7 +14,18 @@ public class MoleculeDescription {
 	public boolean hasReactants;
 	public boolean hasDissolvedReactants;
 	
-	// The hash and the interaction radius are coupled with each other
-	public Integer[] reactsWithHash;
+	// The species id, the interaction radius, the acceptance probabilities by squared distance, 
+	// and the reactions that fire are coupled with each other
+	public int[] reactsWith;
 	public int[] interactionRadius;
+	public double[][] acceptance;
+	public CompiledReactions[] reactions;
+	
+	// The bits of the species ids in reactsWith, packed as SpatialIndex.getLiveTags is
+	public long[] partnerMask;
+	
+	public MoleculeDescription(String formula, int speciesId) {
+		this.formula = formula;
+		this.speciesId = speciesId;
+	}
 }
@@ -0,0 +1,64 @@
+package edu.mtu.reaction;
+
+import edu.mtu.compound.DissolvedMolecule;
+
+/**
+ * The products of a reaction compiled when the registry is loaded, so that creating
+ * them only requires walking the arrays rather than looking up each formula.
+ */
+public class ProductPlan {
+
+	/**
+	 * The product is placed in the reactor as a molecule.
+	 */
+	public final static int AGENT = 0;
+
+	/**
+	 * The product is dissolved and so is only counted.
+	 */
+	public final static int DISSOLVED = 1;
+
+	/**
+	 * The product has no reactions and so is only counted.
+	 */
+	public final static int INERT = 2;
+
+	// The formula, species id, kind, and description of each product, the
+	// description is null unless the product is an agent
+	public final String[] formulas;
+	public final int[] speciesIds;
+	public final int[] kinds;
+	public final MoleculeDescription[] descriptions;
+
+	/**
+	 * Constructor, compile the products using the registry.
+	 */
+	ProductPlan(String[] formulas, ReactionRegistry registry) {
+		this.formulas = formulas;
+		speciesIds = new int[formulas.length];
+		kinds = new int[formulas.length];
+		descriptions = new MoleculeDescription[formulas.length];
+		for (int ndx = 0; ndx < formulas.length; ndx++) {
+			speciesIds[ndx] = registry.getSpeciesId(formulas[ndx]);
+			kinds[ndx] = INERT;
+			if (isDissolved(formulas[ndx])) {
+				kinds[ndx] = DISSOLVED;
+			} else if (registry.hasReactants(formulas[ndx])) {
+				kinds[ndx] = AGENT;
+				descriptions[ndx] = registry.getMoleculeDescription(formulas[ndx]);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the formula is one of the dissolved molecules.
+	 */
+	private static boolean isDissolved(String formula) {
+		for (DissolvedMolecule molecule : ReactionRegistry.DissolvedMoleclues) {
+			if (molecule.getFormula().equals(formula)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
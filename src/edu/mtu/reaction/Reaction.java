@@ -1,16 +1,15 @@
 package edu.mtu.reaction;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
-import org.apache.commons.math3.special.Erf;
+import org.apache.commons.math3.distribution.BinomialDistribution;
 
 import edu.mtu.compound.DisproportionatingMolecule;
 import edu.mtu.compound.DissolvedMolecule;
 import edu.mtu.compound.Molecule;
 import edu.mtu.compound.MoleculeFactory;
-import edu.mtu.primitives.Sparse3DLattice;
+import edu.mtu.primitives.EntityStore;
+import edu.mtu.primitives.SpatialIndex;
 import edu.mtu.reactor.Reactor;
 import edu.mtu.simulation.ChemSim;
 import it.unimi.dsi.util.XoRoShiRo128PlusRandom;
@@ -75,18 +74,75 @@ public class Reaction {
 		long total = ChemSim.getTracker().getCount(reactant);
 		
 		// Do we need to remove molecules?
-		Reactor reactor = Reactor.getInstance();
-		for (; total > count; total--) {
-			Molecule molecule = reactor.getFirst(reactant);
-			molecule.dispose();
+		if (total > count) {
+			Reactor.getInstance().removeN(reactant, (int)(total - count));
+			ChemSim.getTracker().update(reactant, count - total);
 		}
 		
 		// We are adding molecules
-		int[] container = reactor.dimensions;
-		Random random = ChemSim.getInstance().getRandom();
-		for (; total < count; total++) {
-			int x = random.nextInt(container[0]), y = random.nextInt(container[1]), z = random.nextInt(container[2]);
-			MoleculeFactory.create(reactant, new int[] { x, y, z });
+		if (total < count) {
+			MoleculeFactory.createN(reactant, (int)(count - total));
+		}
+	}
+	
+	/**
+	 * Conduct the photolysis of the hydrogen peroxide for the time step. Since each molecule
+	 * photolyses independently with the probability given by the decay model the number that
+	 * do so is binomial, so it is drawn once and that many molecules are chosen at random
+	 * rather than rolling the dice for every molecule.
+	 */
+	public void doPhotolysis() {
+		
+		// Return if there is no decay model
+		double decay = ChemSim.getProperties().getDecayProbability();
+		if (ChemSim.getProperties().getDecayModel() == null || decay <= 0) {
+			return;
+		}
+		
+		// Return if there is no hydrogen peroxide to photolyze
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		int speciesId = registry.getSpeciesId("H2O2");
+		if (speciesId == ReactionRegistry.UNREGISTERED || registry.getPhotolysisPlan(speciesId) == null) {
+			return;
+		}
+		SpatialIndex grid = Reactor.getInstance().grid;
+		int count = grid.getEntityCount(speciesId);
+		if (count == 0) {
+			return;
+		}
+		
+		// Draw the number of molecules that photolyze
+		XoRoShiRo128PlusRandom random = (XoRoShiRo128PlusRandom)ChemSim.getInstance().getRandom();
+		int photolyzed = (decay >= 1) ? count : new BinomialDistribution(null, count, decay).inverseCumulativeProbability(random.nextDouble());
+		
+		// Move a random sample of the molecules to the end of the list, noting where they are
+		EntityStore store = grid.getStore();
+		int[] locations = new int[3 * photolyzed];
+		for (int ndx = 0; ndx < photolyzed; ndx++) {
+			int last = count - 1 - ndx;
+			grid.swapEntities(speciesId, random.nextInt(last + 1), last);
+			int id = grid.getEntity(speciesId, last);
+			locations[3 * ndx] = store.x[id];
+			locations[3 * ndx + 1] = store.y[id];
+			locations[3 * ndx + 2] = store.z[id];
+		}
+		
+		// Remove them together
+		Reactor.getInstance().removeN("H2O2", photolyzed);
+		ChemSim.getTracker().update(speciesId, -photolyzed);
+		
+		// Create the relevant products where they were, noting that hydroxyl gets special treatment
+		ProductPlan plan = registry.getPhotolysisPlan(speciesId);
+		double retention = ChemSim.getProperties().getHydroxylRetention();
+		int[] retained = new int[locations.length];
+		for (int ndx = 0; ndx < plan.formulas.length; ndx++) {
+			int n = 0;
+			for (int jdx = 0; jdx < photolyzed; jdx++) {
+				if (random.nextDoubleFast() < retention) {
+					System.arraycopy(locations, 3 * jdx, retained, 3 * n++, 3);
+				}
+			}
+			MoleculeFactory.createN(plan, ndx, retained, n);
 		}
 	}
 				
@@ -94,83 +150,32 @@ public class Reaction {
 	 * Have the chemical species disproportionate according to its reaction rate.
 	 * 
 	 * @param molecule of the chemical for the disproportionation.
-	 * @param cell where the reaction should take place.
 	 */
 	public void disproportionate(DisproportionatingMolecule molecule) {
 		
-		// Local pointer to the reactions
-		BasicReaction[] reactions = molecule.getReactions();
-		int size = reactions.length;
-
-		// Keep track of the odds
-		boolean probabilistic = false;
-		ArrayList<Double> reactionOdds = new ArrayList<Double>();
-		
-		// Find the indicies and odds of valid reactions
-		ArrayList<Integer> indicies = new ArrayList<Integer>();
-		for (int ndx = 0; ndx < size; ndx++) {
-			// Press on if the description is null
-			if (reactions[ndx] == null) {
-				continue;
-			}
-						
-			// Note the odds
-			double odds = reactions[ndx].getReactionRatio();
-			probabilistic = probabilistic || (odds < 1);
-			reactionOdds.add(odds);			
-			
-			// Note the index for removal
-			indicies.add(ndx);
-		}
-				
-		if (probabilistic) {
-			doProbabilistic(molecule, reactions, indicies, reactionOdds);
+		// Local pointer to the reactions, and those that are still valid
+		CompiledReactions compiled = molecule.getReactions();
+		BasicReaction[] reactions = compiled.reactions;
+		long valid = compiled.branches & ~molecule.getConsumed();
+		int[] location = Reactor.getInstance().getLocation(molecule);
+		
+		if (compiled.selection != null) {
+			// Select one of the reactions by their odds, since every valid reaction is consumed
+			// when this happens none have been consumed yet
+			double selected = ((XoRoShiRo128PlusRandom)ChemSim.getInstance().getRandom()).nextDoubleFast();
+			int index = compiled.selection.select(selected);
+			MoleculeFactory.create(reactions[index].getProductPlan(), location);
 		} else {
-			// Process the reactions
-			for (int index : indicies) {
-				// Create the products for the reaction
-				Reactor reactor = Reactor.getInstance();
-				int[] location = reactor.getLocation(molecule);
-				for (String formula : reactions[index].getProducts()) {			
-					MoleculeFactory.create(formula, location);
+			// Create the products for each of the reactions
+			for (int ndx = 0; ndx < reactions.length; ndx++) {
+				if ((valid & (1L << ndx)) != 0) {
+					MoleculeFactory.create(reactions[ndx].getProductPlan(), location);
 				}
 			}
 		}
 			
-		// Null out the reactions that occurred
-		for (int ndx : indicies) {
-			reactions[ndx] = null;
-		}
-	}
-	
-	private void doProbabilistic(DisproportionatingMolecule molecule, BasicReaction[] reactions, ArrayList<Integer> indicies, ArrayList<Double> reactionOdds) {
-		// Add the odds so we can do a single dice roll
-		int size = reactionOdds.size();
-		double value = 0;
-		for (int ndx = 1; ndx < size; ndx++) {
-			value = reactionOdds.get(ndx) + reactionOdds.get(ndx - 1);
-			reactionOdds.set(ndx, value);
-		}
-		if (value != 1.0) {
-			throw new IllegalArgumentException("Total odds of the reaction '" + molecule.getFormula() + "' cannot exceed 1.0");
-		}
-		double selected = ((XoRoShiRo128PlusRandom)ChemSim.getInstance().getRandom()).nextDoubleFast();
-		
-		// Select the correct reaction
-		double previous = 0.0;
-		for (int ndx = 0; ndx < reactionOdds.size(); ndx++) {
-			
-			// If the selected value is in the range, then create the products and return
-			if (previous <= selected && selected <= reactionOdds.get(ndx)) {
-				int[] location = Reactor.getInstance().getLocation(molecule);
-				for (String formula : reactions[indicies.get(ndx)].getProducts()) {			
-					MoleculeFactory.create(formula, location);
-				}
-				return;
-			}
-			
-			previous = reactionOdds.get(ndx);
-		}
+		// Note the reactions that occurred
+		molecule.consume(valid);
 	}
 	
 	/**
@@ -191,10 +196,7 @@ public class Reaction {
 	 * @return True if a reaction occurred, false otherwise.
 	 */
 	public boolean react(Molecule molecule) {
-		// Finally, see if photolysis needs to take place
-		if (molecule.hasPhotolysis() && photolysis(molecule)) {
-			return true;
-		}
+		// Note that photolysis is done for the species as a whole by doPhotolysis
 		
 		// First, see if there are any bimolecular reactions to take place
 		if (molecule.hasBimoleculear() && bimolecularReaction(molecule)) {
@@ -219,74 +221,84 @@ public class Reaction {
 			return false;
 		}
 		
-		// Get the possible hashes
-		Integer[] hashes = molecule.getReactantHashes(); 
+		// Get the species ids of the possible reactants
+		int[] species = molecule.getReactantIds(); 
 		
 		// Check to see if there are any dissolved molecule we should be aware of,
 		// this comes first since a molecule that reacts with dissolved molecules
 		// is unlikely to do anything else
 		if (molecule.hasDissolvedReactants()) {		
 			for (DissolvedMolecule reactant : ReactionRegistry.DissolvedMoleclues) {
-				for (int formulaHash : hashes) {
-					if (reactant.sameEntity(formulaHash)) {
-						int[] location = Reactor.getInstance().grid.getObjectLocation(molecule);
-						BasicReaction[] reactions = ReactionRegistry.getInstance().getBimolecularReaction(molecule);
-						if (processList(molecule, reactant, location, reactions)) {
-							return true;
-						}
+				for (int speciesId : species) {
+					if (reactant.sameEntity(speciesId)) {
+						int[] location = Reactor.getInstance().getLocation(molecule);
+						CompiledReactions reactions = ReactionRegistry.getInstance().getBimolecularReactions(molecule.getEntityTypeTag(), speciesId);
+						return react(molecule, reactant, location, reactions);
 					}
 				}
 			}
 		}
 								
+		// Nothing to do if all of the partners are extinct
+		SpatialIndex grid = Reactor.getInstance().grid;
+		if (!hasLivePartner(molecule.getPartnerMask(), grid.getLiveTags())) {
+			return false;
+		}
+		
 		// Collect some information
 		Random random = ChemSim.getInstance().getRandom();
 		int step = ChemSim.getSchedule().getTimeStep();		
 		
-		// Note our hash once
-		int hash = molecule.getEntityTypeTag();
+		// Note our species once
+		int speciesId = molecule.getEntityTypeTag();
 		
-		// Get the possible interaction radii
+		// Get the possible interaction radii, and the acceptance probabilities and reactions for each
 		int[] radii = molecule.getInteractionRadii();
+		double[][] acceptance = molecule.getAcceptance();
+		CompiledReactions[] reactions = molecule.getBimolecularReactions();
 
 		// Note the current location
-		Sparse3DLattice grid = Reactor.getInstance().grid;
-		int[] location = grid.getObjectLocation(molecule);
-		int x1 = location[0], y1 = location[1], z1 = location[2];
+		EntityStore store = grid.getStore();
+		int id = molecule.getEntityId();
+		int x1 = store.x[id], y1 = store.y[id], z1 = store.z[id];
 		
-		for (int ndx = 0; ndx < hashes.length; ndx++) {
+		for (int ndx = 0; ndx < species.length; ndx++) {
 			// Since a molecule may react with others of the same species
 			// check to see if we are looking at that right now. If so do 
 			// a 50-50 flip to see if we should continue. This keeps Pogson's
 			// equation balanced.
-			if (hash == hashes[ndx] && random.nextInt(2) == 0) {
+			if (speciesId == species[ndx] && random.nextInt(2) == 0) {
+				continue;
+			}
+			
+			// Skip the search if the partner is extinct
+			if (grid.getEntityCount(species[ndx]) == 0) {
 				continue;
 			}
 			
 			// Find the first that matches
-			Molecule match = (Molecule)grid.findFirstByTag(molecule, hashes[ndx], radii[ndx]);
-			if (match == null) {
+			int match = grid.findFirstByTag(id, species[ndx], radii[ndx]);
+			if (match == EntityStore.NONE) {
 				continue;
 			}
 			
 			// Is the molecule free?
-			if (!match.isFree(step)) {
+			if (store.step[match] == step) {
 				continue;
 			}			
 			
-			// Calculate the distance, but return immediately of we occupy the same space
-			location = grid.getObjectLocation(match);
-			int x = x1 - location[0];
-			int y = y1 - location[1];
-			int z = z1 - location[2];
+			// Calculate the squared distance, but return immediately of we occupy the same space
+			Molecule reactant = (Molecule)store.get(match);
+			int x = x1 - store.x[match];
+			int y = y1 - store.y[match];
+			int z = z1 - store.z[match];
 			if (x == 0 && y == 0 && z == 0) {
-				return processRadius(molecule, match, radii[ndx]);
+				return react(molecule, reactant, reactions[ndx]);
 			}
-			double d = Math.sqrt(x*x + y*y + z*z);
 			
-			// Roll the dice
-			if (random.nextGaussian() < Erf.erfc(d / radii[ndx])) {
-				return processRadius(molecule, match, radii[ndx]);
+			// Roll the dice, the match is in the radius so the squared distance is in the table
+			if (random.nextGaussian() < acceptance[ndx][x*x + y*y + z*z]) {
+				return react(molecule, reactant, reactions[ndx]);
 			}
 		}
 		
@@ -294,84 +306,41 @@ public class Reaction {
 	}
 		
 	/**
-	 * Attempt photolysis on the species.
-	 * 
-	 * @param species to attempt photolysis on.
-	 * @param cell where the reaction should take place.
-	 * @return True if it occurred, false otherwise.
+	 * Returns true if any of the species in the partner mask are live.
 	 */
-	private boolean photolysis(Molecule molecule) {
-		
-		// Return if this isn't hydrogen peroxide
-		if (!molecule.getFormula().equals("H2O2")) {
-			return false;
-		}
-		
-		// Check to see if the reaction occurred based upon decay rates
-		double decay = ChemSim.getProperties().getDecayProbability();
-		XoRoShiRo128PlusRandom random = (XoRoShiRo128PlusRandom)ChemSim.getInstance().getRandom();
-		if (random.nextDoubleFast() > decay) {
-			return false;
-		}
-
-		// Create the relevant products, note that hydroxyl gets special treatment
-		int[] location = Reactor.getInstance().getLocation(molecule);
-		double retention = ChemSim.getProperties().getHydroxylRetention();
-		for (String product : ReactionRegistry.getInstance().getPhotolysisReaction(molecule)) {
-			if (random.nextDoubleFast() < retention) {
-				MoleculeFactory.create(product, location);
-			}
-		}
-			
-		// Note that a reaction occurred, molecule will dispose of itself
-		return true;
-	}	
-		
-	/**
-	 * Process the reactions that are possible for this entity.
-	 */
-	private boolean processRadius(Molecule molecule, Molecule reactant, int radius) {
-		// Find the correct reactions
-		List<BasicReaction> matched = new ArrayList<BasicReaction>();
-		BasicReaction[] reactions = ReactionRegistry.getInstance().getBimolecularReaction(molecule);
-		for (BasicReaction rd : reactions) {
-			if (rd.checkReactants(molecule, reactant) && rd.getInteractionRadius() == radius) {
-				matched.add(rd);
+	private static boolean hasLivePartner(long[] partners, long[] live) {
+		for (int ndx = 0; ndx < partners.length; ndx++) {
+			if ((partners[ndx] & live[ndx]) != 0) {
+				return true;
 			}
 		}
-		int[] location = Reactor.getInstance().grid.getObjectLocation(molecule);
-		return react(molecule, reactant, location, matched);
+		return false;
 	}
-	
+		
 	/**
-	 * Process the reactions that are possible for this entity.
+	 * Do the steps related to the actual reaction, at the location of the molecule.
 	 */
-	private boolean processList(Molecule molecule, Molecule reactant, int[] location, BasicReaction[] reactions) {
-		List<BasicReaction> matched = new ArrayList<BasicReaction>();
-		for (BasicReaction rd : reactions) {
-			if (rd.checkReactants(molecule, reactant)) {
-				matched.add(rd);
-			}
-		}
+	private boolean react(Molecule molecule, Molecule reactant, CompiledReactions matched) {
+		int[] location = Reactor.getInstance().getLocation(molecule);
 		return react(molecule, reactant, location, matched);
 	}
 		
 	/**
 	 * Do the steps related to the actual reaction.
 	 */
-	private boolean react(Molecule molecule, Molecule reactant, int[] location, List<BasicReaction> matched) {
+	private boolean react(Molecule molecule, Molecule reactant, int[] location, CompiledReactions matched) {
 		// Return on a bad call
-		if (matched.size() == 0) {
+		if (matched == null) {
 			throw new IllegalAccessError(String.format("No matches found for %s, %s", molecule, reactant));
 		}
 		
 		// Add the molecules to the model
-		if (matched.size() > 1) {
+		if (matched.disproportionation) {
 			// Disproportion is occurring
 			MoleculeFactory.create(molecule, reactant, matched, location);
 		} else {
 			// A standard reaction is occurring
-			MoleculeFactory.create(matched.get(0).getProducts(), location);
+			MoleculeFactory.create(matched.reactions[0].getProductPlan(), location);
 		}
 		
 		// Clean up the reactant that was involved
@@ -387,8 +356,7 @@ public class Reaction {
 	 * Perform a unimolecular reaction on the given species.
 	 */
 	private boolean unimolecularDecay(Molecule molecule) {
-		int[] location = Reactor.getInstance().grid.getObjectLocation(molecule);
-		BasicReaction[] reactions = ReactionRegistry.getInstance().getUnimolecularReaction(molecule);
-		return processList(molecule, null, location, reactions);
+		CompiledReactions reactions = ReactionRegistry.getInstance().getUnimolecularReactions(molecule.getEntityTypeTag());
+		return react(molecule, null, reactions);
 	}
 }
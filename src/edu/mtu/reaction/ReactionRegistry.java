@@ -15,14 +15,19 @@ import javax.activity.InvalidActivityException;
 import edu.mtu.compound.DissolvedMolecule;
 import edu.mtu.compound.Molecule;
 import edu.mtu.parser.Parser;
-import edu.mtu.util.FnvHash;
 
 /**
  * This singleton contains a look up of the reactions in the simulation. In order to account for 
  * disproportionation each of the species is associated with a list of formulas.
+ * 
+ * Each species is assigned a dense id in [0, getSpeciesCount()) when the reactions are loaded,
+ * the ids are used as the tags in the reactor so the tables kept per species are plain arrays.
  */
 public class ReactionRegistry {
 	
+	// Note the instance comes first since the dissolved molecules look up their species
+	private static ReactionRegistry instance = new ReactionRegistry();
+	
 	/**
 	 * Dissolved molecules that are always present in the reactor.
 	 */
@@ -31,9 +36,18 @@ public class ReactionRegistry {
 			new DissolvedMolecule("H2O")
 	};
 	
-	private static ReactionRegistry instance = new ReactionRegistry();
-
-	private int[] entityHashes;
+	/**
+	 * Species id of formulas that are not in the registry.
+	 */
+	public static final int UNREGISTERED = -1;
+	
+	// The species ids assigned to the formulas, this includes the disproportionating 
+	// reactant pairs (e.g. A + B) since they are placed in the reactor as well
+	private Map<String, Integer> speciesIds;
+	private String[] species;
+	
+	// The largest interaction radius of the bimolecular reactions
+	private int maxInteractionRadius;
 		
 	// Mapping of all of the molecules and the basics of their reactions
 	private Map<String, MoleculeDescription> moleculeDescriptions;
@@ -50,6 +64,18 @@ public class ReactionRegistry {
 	// Unimolecular reactions are [Reactant] -> [Product] + ... + [Product]
 	private Map<String, BasicReaction[]> unimolecular;
 	
+	// The descriptions and reactions of each species, indexed by species id
+	private MoleculeDescription[] descriptionsBySpecies;
+	private BasicReaction[][] bimolecularBySpecies;
+	private String[][] photolysisBySpecies;
+	private ProductPlan[] photolysisPlans;
+	private BasicReaction[][] unimolecularBySpecies;
+	
+	// The reactions compiled for each pair of species, indexed by species and then partner, and 
+	// the unimolecular reactions compiled for each species
+	private CompiledReactions[][] bimolecularByPair;
+	private CompiledReactions[] unimolecularCompiled;
+	
 	// Track the molecules that appear on the B side of the equation
 	private HashSet<String> bSides;
 	
@@ -134,6 +160,14 @@ public class ReactionRegistry {
 		photolysis = null;
 		unimolecular = null;
 		moleculeDescriptions = null;
+		speciesIds = null;
+		species = null;
+		descriptionsBySpecies = null;
+		bimolecularBySpecies = null;
+		photolysisBySpecies = null;
+		unimolecularBySpecies = null;
+		bimolecularByPair = null;
+		unimolecularCompiled = null;
 	}
 	
 	/**
@@ -154,7 +188,7 @@ public class ReactionRegistry {
 	 * Returns the list of bimolecular reactions for the chemical species or null.
 	 */
 	public BasicReaction[] getBimolecularReaction(Molecule molecule) {
-		return bimolecular.get(molecule.getFormula());
+		return bimolecularBySpecies[molecule.getEntityTypeTag()];
 	}
 	
 	/**
@@ -164,6 +198,13 @@ public class ReactionRegistry {
 		return bimolecular.get(formula);
 	}
 	
+	/**
+	 * Returns the compiled bimolecular reactions between the species and partner, or null.
+	 */
+	public CompiledReactions getBimolecularReactions(int speciesId, int partnerId) {
+		return bimolecularByPair[speciesId][partnerId];
+	}
+	
 	/**
 	 * Get a list of all the entities in the registry.
 	 */
@@ -171,32 +212,84 @@ public class ReactionRegistry {
 		return moleculeDescriptions.keySet();
 	}
 		
+		
 	/**
-	 * Get a list of all of the entity hashes in the registry.
+	 * Get the largest interaction radius used by the bimolecular reactions.
 	 */
-	public int[] getEntityHashList() {
-		return entityHashes;
+	public int getMaxInteractionRadius() {
+		return maxInteractionRadius;
 	}
 		
 	/**
 	 * Returns the photolysis products for the chemical species or null.
 	 */
 	public String[] getPhotolysisReaction(Molecule molecule) {
-		return photolysis.get(molecule.getFormula());
+		return photolysisBySpecies[molecule.getEntityTypeTag()];
+	}
+	
+	/**
+	 * Returns the photolysis products for the species id or null.
+	 */
+	public String[] getPhotolysisReaction(int speciesId) {
+		return photolysisBySpecies[speciesId];
+	}
+	
+	/**
+	 * Returns the compiled photolysis products for the species id or null.
+	 */
+	public ProductPlan getPhotolysisPlan(int speciesId) {
+		return photolysisPlans[speciesId];
 	}
 		
 	/**
 	 * Returns the list of unimolecular reactions for the chemical species or null.
 	 */
 	public BasicReaction[] getUnimolecularReaction(Molecule molecule) {
-		return unimolecular.get(molecule.getFormula());
+		return unimolecularBySpecies[molecule.getEntityTypeTag()];
+	}
+	
+	/**
+	 * Returns the compiled unimolecular reactions for the species, or null.
+	 */
+	public CompiledReactions getUnimolecularReactions(int speciesId) {
+		return unimolecularCompiled[speciesId];
 	}
 	
 	/**
 	 * Get the molecule description for the given formula.
 	 */
 	public MoleculeDescription getMoleculeDescription(String formula) {
-		return moleculeDescriptions.get(formula);
+		return (moleculeDescriptions == null) ? null : moleculeDescriptions.get(formula);
+	}
+	
+	/**
+	 * Get the molecule description for the given species id, or null if the id is a 
+	 * disproportionating reactant pair.
+	 */
+	public MoleculeDescription getMoleculeDescription(int speciesId) {
+		return descriptionsBySpecies[speciesId];
+	}
+	
+	/**
+	 * Get the formula of the given species id.
+	 */
+	public String getSpecies(int speciesId) {
+		return species[speciesId];
+	}
+	
+	/**
+	 * Get the number of species ids that have been assigned.
+	 */
+	public int getSpeciesCount() {
+		return (species == null) ? 0 : species.length;
+	}
+	
+	/**
+	 * Get the species id of the given formula, or UNREGISTERED if the formula is unknown.
+	 */
+	public int getSpeciesId(String formula) {
+		Integer id = (speciesIds == null) ? null : speciesIds.get(formula);
+		return (id == null) ? UNREGISTERED : id;
 	}
 		
 	/**
@@ -224,9 +317,10 @@ public class ReactionRegistry {
 		
 		HashSet<String> aSides = new HashSet<String>();
 		bSides = new HashSet<String>();
+		maxInteractionRadius = 0;
 		
 		// Define a hash map so we can check for dispropration reaction, namely two of the same reactions		
-		HashMap<Integer, Integer> disproportionationCheck = new HashMap<Integer, Integer>();
+		HashMap<String, Integer> disproportionationCheck = new HashMap<String, Integer>();
 
 		StringBuilder message = new StringBuilder();
 		List<ChemicalEquation> reactions = Parser.parseReactions(fileName); 
@@ -262,6 +356,9 @@ public class ReactionRegistry {
 				
 				// Update our b-side
 				bSides.add(reaction.getReactants()[1]);
+				
+				// Note the interaction radius
+				maxInteractionRadius = Math.max(maxInteractionRadius, reaction.getInteractionRadius());
 			}
 			if (reaction.getReactionRatio() != 1.0) {
 				message.append(", " + reaction.getReactionRatio());
@@ -291,9 +388,11 @@ public class ReactionRegistry {
 			}
 		}
 				
-		// Build the molecule descriptions
+		// Assign the species ids and build the molecule descriptions
+		assignSpeciesIds(disproportionationCheck);
 		buildMoleculeDescriptions();
-		buildEntityHash(disproportionationCheck);
+		buildSpeciesTables(reactions);
+		compileReactions();
 				
 		// Return the report
 		return message.toString();
@@ -302,8 +401,7 @@ public class ReactionRegistry {
 	/**
 	 * Helper function to update the check map.
 	 */
-	private void updateCheck(HashMap<Integer, Integer> disproportionationCheck, String check) {
-		int key = FnvHash.fnv1a32(check);
+	private void updateCheck(HashMap<String, Integer> disproportionationCheck, String key) {
 		if (!disproportionationCheck.containsKey(key)) {
 			disproportionationCheck.put(key, 0);
 		}
@@ -327,50 +425,68 @@ public class ReactionRegistry {
 	}
 	
 	/**
-	 * Build the array that contains the entity hashes that are present.
+	 * Assign the species ids, the species in the reactions come first in sorted order followed
+	 * by the disproportionating reactant pairs (i.e., the pairs with more than one reaction).
 	 */
-	private void buildEntityHash(HashMap<Integer, Integer> disproportionationCheck) {
-		// Add all of the disproportionation hashes that have an appearance count greater than one
-		HashSet<Integer> working = new HashSet<Integer>();
-		for (int key : disproportionationCheck.keySet()) {
-			int value = disproportionationCheck.get(key);
-			if (value > 1) {
-				working.add(key);
+	private void assignSpeciesIds(HashMap<String, Integer> disproportionationCheck) {
+		List<String> working = new ArrayList<String>(findEntities());
+		Collections.sort(working);
+		List<String> pairs = new ArrayList<String>();
+		for (String key : disproportionationCheck.keySet()) {
+			if (disproportionationCheck.get(key) > 1 && !working.contains(key)) {
+				pairs.add(key);
 			}
 		}
+		Collections.sort(pairs);
+		working.addAll(pairs);
 		
-		for (String key : moleculeDescriptions.keySet()) {
-			working.add(FnvHash.fnv1a32(key));
-		}
-
-		// Allocate an array and move the data over... deals with the Java idiosyncrasy between int and Integer
-		entityHashes = new int[working.size()];
-		int ndx = 0;
-		for (int hash : working) {
-			entityHashes[ndx++] = hash;
+		species = working.toArray(new String[working.size()]);
+		speciesIds = new HashMap<String, Integer>();
+		for (int ndx = 0; ndx < species.length; ndx++) {
+			speciesIds.put(species[ndx], ndx);
 		}
 	}
 	
 	/**
-	 * Build out all of the molecule descriptions once so we don't have to do any processing again.
+	 * Build the tables indexed by species id, note the species ids of the reactants and compile 
+	 * the products of each equation, and refresh the dissolved molecules so that they carry their 
+	 * species ids.
 	 */
-	private void buildMoleculeDescriptions() {
-		// Start by finding all of our unique entities
-		HashSet<String> entities = new HashSet<String>();
-		for (String key : photolysis.keySet()) {
-			entities.add(key);
-			for (String value : photolysis.get(key)) {
-				entities.add(value);
+	private void buildSpeciesTables(List<ChemicalEquation> reactions) {
+		descriptionsBySpecies = new MoleculeDescription[species.length];
+		bimolecularBySpecies = new BasicReaction[species.length][];
+		photolysisBySpecies = new String[species.length][];
+		photolysisPlans = new ProductPlan[species.length];
+		unimolecularBySpecies = new BasicReaction[species.length][];
+		for (int ndx = 0; ndx < species.length; ndx++) {
+			descriptionsBySpecies[ndx] = moleculeDescriptions.get(species[ndx]);
+			bimolecularBySpecies[ndx] = bimolecular.get(species[ndx]);
+			photolysisBySpecies[ndx] = photolysis.get(species[ndx]);
+			if (photolysisBySpecies[ndx] != null) {
+				photolysisPlans[ndx] = new ProductPlan(photolysisBySpecies[ndx], this);
 			}
+			unimolecularBySpecies[ndx] = unimolecular.get(species[ndx]);
 		}
-		entities.addAll(extractBasic(unimolecular));
-		entities.addAll(extractBasic(bimolecular));
-		entities.addAll(extractAcid(acid));
 		
-		// Now use that list to start building the descriptions
+		for (ChemicalEquation ce : reactions) {
+			for (int ndx = 0; ndx < ce.reactants.length; ndx++) {
+				ce.reactantIds[ndx] = getSpeciesId(ce.reactants[ndx]);
+			}
+			ce.plan = new ProductPlan(ce.products, this);
+		}
+		
+		for (int ndx = 0; ndx < DissolvedMoleclues.length; ndx++) {
+			DissolvedMoleclues[ndx] = new DissolvedMolecule(DissolvedMoleclues[ndx].getFormula());
+		}
+	}
+	
+	/**
+	 * Build out all of the molecule descriptions once so we don't have to do any processing again.
+	 */
+	private void buildMoleculeDescriptions() {
 		moleculeDescriptions = new HashMap<String, MoleculeDescription>();
-		for (String formula : entities) {
-			MoleculeDescription md = new MoleculeDescription();
+		for (String formula : findEntities()) {
+			MoleculeDescription md = new MoleculeDescription(formula, speciesIds.get(formula));
 			md.hasBimolecular = bimolecular.containsKey(formula);
 			md.hasPhotolysis = photolysis.containsKey(formula);
 			md.hasUnimolecular = unimolecular.containsKey(formula);			
@@ -383,6 +499,71 @@ public class ReactionRegistry {
 		}
 	}
 	
+	/**
+	 * Compile the reactions for each pair of species, and for each of the partners the molecule
+	 * descriptions note, so that firing a reaction doesn't require searching the reaction lists.
+	 */
+	private void compileReactions() {
+		bimolecularByPair = new CompiledReactions[species.length][species.length];
+		unimolecularCompiled = new CompiledReactions[species.length];
+		for (int ndx = 0; ndx < species.length; ndx++) {
+			if (unimolecularBySpecies[ndx] != null) {
+				unimolecularCompiled[ndx] = new CompiledReactions(unimolecularBySpecies[ndx]);
+			}
+			if (bimolecularBySpecies[ndx] == null) {
+				continue;
+			}
+			for (int partner = 0; partner < species.length; partner++) {
+				bimolecularByPair[ndx][partner] = compile(bimolecularBySpecies[ndx], ndx, partner, -1);
+			}
+			
+			// The partners of the description are coupled with the interaction radius
+			MoleculeDescription md = descriptionsBySpecies[ndx];
+			md.reactions = new CompiledReactions[md.reactsWith.length];
+			for (int jdx = 0; jdx < md.reactsWith.length; jdx++) {
+				md.reactions[jdx] = compile(bimolecularBySpecies[ndx], ndx, md.reactsWith[jdx], md.interactionRadius[jdx]);
+			}
+		}
+	}
+	
+	/**
+	 * Compile the reactions between the species and partner with the given interaction radius,
+	 * or any radius if it is negative. Returns null if there are no matching reactions.
+	 */
+	private static CompiledReactions compile(BasicReaction[] reactions, int speciesId, int partnerId, int radius) {
+		List<BasicReaction> matched = new ArrayList<BasicReaction>();
+		for (BasicReaction reaction : reactions) {
+			int[] ids = reaction.reactantIds;
+			if (ids.length != 2 || (radius >= 0 && reaction.getInteractionRadius() != radius)) {
+				continue;
+			}
+			if ((ids[0] == speciesId && ids[1] == partnerId) || (ids[0] == partnerId && ids[1] == speciesId)) {
+				matched.add(reaction);
+			}
+		}
+		if (matched.isEmpty()) {
+			return null;
+		}
+		return new CompiledReactions(matched.toArray(new BasicReaction[matched.size()]));
+	}
+	
+	/**
+	 * Find all of the unique entities in the reactions.
+	 */
+	private HashSet<String> findEntities() {
+		HashSet<String> entities = new HashSet<String>();
+		for (String key : photolysis.keySet()) {
+			entities.add(key);
+			for (String value : photolysis.get(key)) {
+				entities.add(value);
+			}
+		}
+		entities.addAll(extractBasic(unimolecular));
+		entities.addAll(extractBasic(bimolecular));
+		entities.addAll(extractAcid(acid));
+		return entities;
+	}
+	
 	/**
 	 * Check to see if the given compound has any dissolved reactants.
 	 */
@@ -407,33 +588,28 @@ public class ReactionRegistry {
 	 */
 	private void extractReactants(String formula, MoleculeDescription md) {
 		BasicReaction[] rds = bimolecular.get(formula);
+		md.partnerMask = new long[(species.length + Long.SIZE - 1) / Long.SIZE];
 		if (rds == null) {
-			md.reactsWithHash = new Integer[0];
+			md.reactsWith = new int[0];
 			md.interactionRadius = new int[0];
+			md.acceptance = new double[0][];
+			md.reactions = new CompiledReactions[0];
 			return;
 		}
 		
-		ArrayList<Integer> entities = new ArrayList<Integer>();
-		ArrayList<Integer> radii = new ArrayList<Integer>();
-		for (BasicReaction rd : rds) {
-			String[] products = rd.getReactants();
+		md.reactsWith = new int[rds.length];
+		md.interactionRadius = new int[rds.length];
+		md.acceptance = new double[rds.length][];
+		for (int ndx = 0; ndx < rds.length; ndx++) {
+			String[] reactants = rds[ndx].getReactants();
 
-			// Note the hash to use
-			int index = (products[0].equals(formula)) ? 1 : 0;
-			int hash = FnvHash.fnv1a32(products[index]);
-			
-			// Set the values
-			entities.add(hash);
-			radii.add(rd.getInteractionRadius());				
+			// Note the species id of the other reactant
+			int index = (reactants[0].equals(formula)) ? 1 : 0;
+			md.reactsWith[ndx] = speciesIds.get(reactants[index]);
+			md.partnerMask[md.reactsWith[ndx] / Long.SIZE] |= 1L << (md.reactsWith[ndx] % Long.SIZE);
+			md.interactionRadius[ndx] = rds[ndx].getInteractionRadius();
+			md.acceptance[ndx] = AcceptanceTable.get(md.interactionRadius[ndx]);
 		}
-		
-		// Java idiosyncrasy, going to a primitive array isn't that easy 
-		md.reactsWithHash = new Integer[entities.size()];
-		md.interactionRadius = new int[entities.size()];
-		for (int ndx = 0; ndx < entities.size(); ndx++) {
-			md.reactsWithHash[ndx] = entities.get(ndx);
-			md.interactionRadius[ndx] = radii.get(ndx);
-		}		
 	}
 	
 	private HashSet<String> extractAcid(Map<String, AcidDissociation> reactions) {
@@ -1,15 +1,19 @@
 package edu.mtu.reactor;
 
 import java.util.List;
-import java.util.Set;
+import java.util.Random;
 
 import edu.mtu.compound.Molecule;
+import edu.mtu.compound.MoleculePool;
 import edu.mtu.parser.ChemicalDto;
-import edu.mtu.primitives.Entity;
-import edu.mtu.primitives.Sparse3DLattice;
+import edu.mtu.primitives.EntityStore;
+import edu.mtu.primitives.SpatialIndex;
+import edu.mtu.primitives.SpatialIndexFactory;
+import edu.mtu.reaction.MoleculeDescription;
 import edu.mtu.reaction.ReactionRegistry;
+import edu.mtu.simulation.ChemSim;
 import edu.mtu.simulation.SimulationProperties;
-import edu.mtu.util.FnvHash;
+import edu.mtu.simulation.schedule.Schedule;
 import net.sourceforge.sizeof.SizeOf;
 import sim.util.Bag;
 
@@ -32,13 +36,17 @@ public class Reactor {
 	private long moleculeSize;
 
 	public final int[] dimensions;
-	public Sparse3DLattice grid; 
+	public SpatialIndex grid; 
+	
+	// The time step, cached since every molecule needs it when it moves
+	public final double deltaT;
 	
 	/**
 	 * Constructor.
 	 */
-	private Reactor(int[] dimensions) { 
+	private Reactor(int[] dimensions, double deltaT) { 
 		this.dimensions = dimensions;
+		this.deltaT = deltaT;
 	}
 	
 	/**
@@ -61,12 +69,16 @@ public class Reactor {
 	}
 		
 	public Molecule getFirst(String formula) {
-		int hash = FnvHash.fnv1a32(formula);
-		return (Molecule)grid.getFirstEntity(hash);
+		int species = ReactionRegistry.getInstance().getSpeciesId(formula);
+		if (species == ReactionRegistry.UNREGISTERED) {
+			return null;
+		}
+		int id = grid.getFirstEntity(species);
+		return (id == EntityStore.NONE) ? null : (Molecule)grid.getStore().get(id);
 	}
 	
 	public int[] getLocation(Molecule molecule) {
-		return grid.getObjectLocation(molecule);
+		return grid.getObjectLocation(molecule.getEntityId());
 	}
 	
 	/**
@@ -80,9 +92,14 @@ public class Reactor {
 	 * Returns all molecules present in the reactor.
 	 */
 	public Molecule[] getMolecules() {
-		Set<Entity> objects = grid.getAllObjects();
-		Molecule[] array = new Molecule[objects.size()];
-		objects.toArray(array);
+		EntityStore store = grid.getStore();
+		Molecule[] array = new Molecule[store.getCount()];
+		int index = 0;
+		for (int id = 0; id < store.getHighWater(); id++) {
+			if (store.isAlive(id)) {
+				array[index++] = (Molecule)store.get(id);
+			}
+		}
 		return array;
 	}
 		
@@ -90,7 +107,7 @@ public class Reactor {
 	 * Get the molecules at the same location as the given molecule.
 	 */
 	public Bag getMolecules(Molecule molecule) {
-		return grid.getColocatedObjects(molecule);
+		return grid.getColocatedObjects(molecule.getEntityId());
 	}
 		
 	/**
@@ -108,21 +125,25 @@ public class Reactor {
 	public static void initalize(List<ChemicalDto> compounds) {
 		try {
 			
-			// Note the size and number of initial molecules
-			long size = SizeOf.deepSizeOf(new Molecule("CH3COCH2OH", false)) * 3;
+			// Note the size and number of initial molecules, the description is shared 
+			// so only the molecule itself and the space it takes in the index count
+			String index = SimulationProperties.getInstance().getSpatialIndex();
+			long size = SizeOf.sizeOf(new Molecule("CH3COCH2OH", false)) + SpatialIndexFactory.getBytesPerEntity(index);
 			int count = SimulationProperties.getInstance().getInitialMolecules();
 			
 			// Use the maximum molecule count to estimate a size for the reactor
 			int dimension = calculateSize(compounds, count);
 			
 			// Create the reactor, set relevant values, and return
-			int[] hashes = ReactionRegistry.getInstance().getEntityHashList();
-			if (hashes == null) {
-				throw new IllegalAccessError("Entity hash table is null.");
+			int species = ReactionRegistry.getInstance().getSpeciesCount();
+			if (species == 0) {
+				throw new IllegalAccessError("No species have been registered.");
 			}
+			int radius = ReactionRegistry.getInstance().getMaxInteractionRadius();
 			
-			instance = new Reactor(new int[] { dimension, dimension, dimension });
-			instance.grid = Sparse3DLattice.create3DLattice(count, hashes);
+			double dt = SimulationProperties.getInstance().getDeltaT();
+			instance = new Reactor(new int[] { dimension, dimension, dimension }, dt);
+			instance.grid = SpatialIndexFactory.create(index, count, species, radius);
 			instance.moleculeCount = count;
 			instance.moleculeSize = size;
 			
@@ -137,13 +158,76 @@ public class Reactor {
 	 * Insert the given molecule at the given location.
 	 */
 	public void insert(Molecule molecule, int[] location) {
-		grid.setObjectLocation(molecule, location);
+		grid.add(molecule, location[0], location[1], location[2]);
+	}
+	
+	/**
+	 * Insert the given molecule at the given location.
+	 */
+	public void insert(Molecule molecule, int x, int y, int z) {
+		grid.add(molecule, x, y, z);
+	}
+	
+	/**
+	 * Create the given number of molecules at random locations and schedule them, note 
+	 * that the count of the molecules is not updated.
+	 */
+	public void insertN(String formula, int n) {
+		Random random = ChemSim.getInstance().getRandom();
+		Schedule schedule = ChemSim.getSchedule();
+		MoleculeDescription md = ReactionRegistry.getInstance().getMoleculeDescription(formula);
+		MoleculePool pool = MoleculePool.getInstance();
+		for (int ndx = 0; ndx < n; ndx++) {
+			Molecule molecule = pool.get(md);
+			schedule.insert(molecule);
+			grid.add(molecule, random.nextInt(dimensions[0]), random.nextInt(dimensions[1]), random.nextInt(dimensions[2]));
+		}
+	}
+	
+	/**
+	 * Create the given number of molecules at the given locations and schedule them, note 
+	 * that the count of the molecules is not updated.
+	 * 
+	 * @param md of the molecules to be created.
+	 * @param locations of the molecules as consecutive x, y, z triples.
+	 * @param n The number of molecules to create.
+	 */
+	public void insertN(MoleculeDescription md, int[] locations, int n) {
+		Schedule schedule = ChemSim.getSchedule();
+		MoleculePool pool = MoleculePool.getInstance();
+		for (int ndx = 0; ndx < n; ndx++) {
+			Molecule molecule = pool.get(md);
+			schedule.insert(molecule);
+			grid.add(molecule, locations[3 * ndx], locations[3 * ndx + 1], locations[3 * ndx + 2]);
+		}
 	}
 	
 	/**
 	 * Remove the molecule from the grid.
 	 */
 	public void remove(Molecule molecule) {
-		grid.remove(molecule);
+		grid.remove(molecule.getEntityId());
+	}
+	
+	/**
+	 * Remove up to n molecules of the given type from the grid and the schedule, note 
+	 * that the count of the molecules is not updated.
+	 * 
+	 * @return The number of molecules removed.
+	 */
+	public int removeN(String formula, int n) {
+		int species = ReactionRegistry.getInstance().getSpeciesId(formula);
+		if (species == ReactionRegistry.UNREGISTERED) {
+			return 0;
+		}
+		
+		// The grid removes the last molecules for the species, so deactivate those first
+		Schedule schedule = ChemSim.getSchedule();
+		EntityStore store = grid.getStore();
+		int size = grid.getEntityCount(species);
+		for (int ndx = Math.max(size - n, 0); ndx < size; ndx++) {
+			schedule.remove((Molecule)store.get(grid.getEntity(species, ndx)));
+		}
+		return grid.removeN(species, n);
 	}
 }
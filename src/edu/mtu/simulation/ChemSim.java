@@ -14,6 +14,7 @@ import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
 import edu.mtu.compound.Molecule;
+import edu.mtu.compound.MoleculePool;
 import edu.mtu.parser.ChemicalDto;
 import edu.mtu.parser.Parser;
 import edu.mtu.reaction.Reaction;
@@ -24,8 +25,9 @@ import edu.mtu.simulation.decay.DecayModel;
 import edu.mtu.simulation.schedule.Schedule;
 import edu.mtu.simulation.schedule.Simulation;
 import edu.mtu.simulation.tracking.CensusTracking;
-import edu.mtu.simulation.tracking.Converter;
+import edu.mtu.simulation.tracking.SpatialSnapshots;
 import edu.mtu.simulation.tracking.TrackEnties;
+import edu.mtu.simulation.tracking.VoxelFields;
 import it.unimi.dsi.util.XoRoShiRo128PlusRandom;
 
 public class ChemSim implements Simulation {
@@ -46,6 +48,8 @@ public class ChemSim implements Simulation {
 	
 	// Entity count tracker for the simulation
 	private CensusTracking census;
+	private SpatialSnapshots snapshots;
+	private VoxelFields fields;
 	private TrackEnties tracker;	
 		
 	/**
@@ -84,15 +88,36 @@ public class ChemSim implements Simulation {
 			
 			// Initialize the tracker(s)
 			fileName = simulation.getResultsFileName();
-			tracker = new TrackEnties(fileName, simulation.getOverWriteResults());
+			tracker = new TrackEnties(fileName, simulation.getOverWriteResults(), simulation.getResultsFormat());
 			
 			// Initialize the model
 			random = new XoRoShiRo128PlusRandom(seed);
 			Reactor.initalize(compounds);
+			MoleculePool.getInstance().clear();
+			
+			// Start the census if need be, this must be done before the molecules are added
+			if (simulation.getCensusInterval() > 0) {
+				census = new CensusTracking(simulation.getCensusFileName(), simulation.getOverWriteResults(), Reactor.getInstance().grid, simulation.getCensusInterval(), simulation.getResultsFormat());
+			}
+			
+			// Start taking spatial snapshots if need be
+			if (simulation.getSnapshotInterval() > 0) {
+				snapshots = new SpatialSnapshots(simulation.getSnapshotFileName(), Reactor.getInstance().grid, Reactor.getInstance().dimensions, 
+						simulation.getSnapshotInterval(), SpatialSnapshots.DEFAULT_BUDGET);
+			}
+			
+			// Keep the concentration fields if need be, like the census this must be done before the molecules are added
+			if (simulation.getVoxelResolution() > 0) {
+				fields = new VoxelFields(simulation.getVoxelFileName(), Reactor.getInstance().grid, Reactor.getInstance().dimensions, simulation.getVoxelResolution());
+			}
 			printHeader(report);
 			
-			// Load the compounds
+			// Load the compounds, then write the molar values along with the counts now that the scaling is known
 			initializeModel(compounds);
+			tracker.setMolarFile(simulation.getMolarFileName(), simulation.getOverWriteResults(), properties.getMoleculeToMol());
+			if (fields != null) {
+				fields.setMoleculeToMol(properties.getMoleculeToMol());
+			}
 			
 			// If no decay rate is set, we have no decay model
 			fileName = SimulationProperties.getInstance().getChemicalsFileName();
@@ -135,19 +160,33 @@ public class ChemSim implements Simulation {
 		for (String reactant : ReactionRegistry.getInstance().getAcidDissociationReactants()) {
 			Reaction.getInstance().doAcidDissociation(reactant);
 		}
-								
+		
 		// Update the census if need be
 		if (census != null) {
-			census.count();
+			census.count(count, count * SimulationProperties.getInstance().getDeltaT(), tracker);
+		}
+		
+		// Take a spatial snapshot if need be
+		if (snapshots != null) {
+			snapshots.snapshot(count, count * SimulationProperties.getInstance().getDeltaT());
 		}
 						
 		// Sample the count and report if need be
 		if (count % reportInterval == 0) {
 			double dt = SimulationProperties.getInstance().getDeltaT();
 			tracker.reset(true, count * dt);
+			if (fields != null) {
+				fields.dump(count * dt);
+			}
 			System.out.println(LocalDateTime.now() + ": " + (count * dt) + " / "  + count + " of " + total);
 		}
 		
+		// Photolyze the hydrogen peroxide for the coming time step, after sampling so the 
+		// counts reported for a step don't include the photolysis that follows it
+		if (count < total) {
+			Reaction.getInstance().doPhotolysis();
+		}
+		
 		// Check to see if we can terminate, but let the simulation warm up first
 		if (count < 10) {
 			return;
@@ -167,18 +206,40 @@ public class ChemSim implements Simulation {
 	public void finish(boolean terminated) {
 		if (census != null) {
 			census.complete();
-			System.out.print("\nCensus results written to: census.csv");
+			System.out.print("\nCensus results written to: " + SimulationProperties.getInstance().getCensusFileName());
 		}		
 		
-		// Write the tracked molecule counts
+		if (snapshots != null) {
+			snapshots.complete();
+			System.out.print(String.format("\nSpatial snapshots written to: %s (%d written, %d skipped, %.3f%% of the run copying, %.2fs writing)", 
+					SimulationProperties.getInstance().getSnapshotFileName(), snapshots.getWritten(), snapshots.getSkipped(), 
+					100 * snapshots.getOverhead(), snapshots.getWritingTime()));
+		}
+		
+		if (fields != null) {
+			fields.complete();
+			System.out.print(String.format("\nVoxel fields written to: %s (%d dumps)", SimulationProperties.getInstance().getVoxelFileName(), fields.getDumps()));
+		}
+		
+		// Note how well the molecule pool did
+		MoleculePool pool = MoleculePool.getInstance();
+		System.out.println(String.format("\nMolecule pool hit rate: %.1f%% of %d requests", pool.getHitRate() * 100, pool.getRequests()));
+		
+		// Write the tracked molecule counts, noting if the reports had to wait on the writer
 		tracker.complete();
+		if (tracker.getStalls() > 0) {
+			System.out.println("Results writer stalled " + tracker.getStalls() + " times");
+		}
 		String moleculear = SimulationProperties.getInstance().getResultsFileName();
 		System.out.println("\nMolecule counts written to: " + moleculear);
 		
-		// Use the molecule counts to write out the molar counts
-		String mols = SimulationProperties.getInstance().getMolarFileName();
-		Converter.Convert(moleculear, mols, properties.getMoleculeToMol());
-		System.out.println("Molar counts written to: " + mols);
+		// The molar counts are written along with the molecule counts, unless they are binary
+		if (SimulationProperties.getInstance().getResultsFormat() == TrackEnties.CSV) {
+			String mols = SimulationProperties.getInstance().getMolarFileName();
+			System.out.println("Molar counts written to: " + mols);
+		} else {
+			System.out.println("Molar counts may be exported from the molecule counts using BinaryExporter");
+		}
 		
 		System.out.println("\n" + LocalDateTime.now());
 	}
@@ -237,13 +298,10 @@ public class ChemSim implements Simulation {
 		Molecule[] moleclues = new Molecule[size];
 		for (ChemicalDto chemical : chemicals) {
 			
-			try {
-				// Check to make sure the molecule is valid, note we are only doing
-				// this here since it is easiest way to ensure that the configuration
-				// from the user is valid
-				Molecule check = new Molecule(chemical.formula);
-				check.getReactantHashes();
-			} catch (NullPointerException ex) {
+			// Check to make sure the molecule is valid, note we are only doing
+			// this here since it is easiest way to ensure that the configuration
+			// from the user is valid
+			if (ReactionRegistry.getInstance().getMoleculeDescription(chemical.formula) == null) {
 				System.err.println("No reactions assoicated with input chemcial, " + chemical.formula);
 				System.exit(-1);
 			}
@@ -261,7 +319,7 @@ public class ChemSim implements Simulation {
 		int[] container = reactor.dimensions;
 		for (Molecule molecule : moleclues) {
 			int x = random.nextInt(container[0]), y = random.nextInt(container[1]), z = random.nextInt(container[2]);
-			reactor.grid.setObjectLocation(molecule, new int[] { x, y, z });
+			reactor.insert(molecule, x, y, z);
 			schedule.insert(molecule);
 		}
 	}
@@ -307,6 +365,7 @@ public class ChemSim implements Simulation {
 		System.out.println("Inital pH: " + properties.getPH());
 		int[] container = Reactor.getInstance().dimensions;
 		System.out.println("Reactor Dimensions (nm): " + container[0] + ", " + container[1] + ", " + container[2]);
+		System.out.println("Spatial Index: " + SimulationProperties.getInstance().getSpatialIndex());
 		
 		// Print report of reactions
 		DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd - HH:mm:ss");
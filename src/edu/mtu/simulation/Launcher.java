@@ -7,7 +7,8 @@ import java.util.ArrayList;
 import java.util.Date;
 
 import edu.mtu.reaction.Verifier;
-import edu.mtu.simulation.tracking.Converter;
+import edu.mtu.simulation.tracking.BinaryResultsWriter;
+import edu.mtu.simulation.tracking.Tracker;
 import edu.mtu.system.EchoStream;
 import net.sourceforge.sizeof.SizeOf;
 
@@ -69,11 +70,8 @@ public final class Launcher {
 			System.err.println(ex.getMessage());
 			ex.printStackTrace();
 			
-			// Still format the mols though
+			// The results and mols are written as they are reported, so they are as current as the last report
 			System.err.println("Results and molar files saved.");
-			String moleculear = properties.getResultsFileName();
-			String mols = properties.getMolarFileName();
-			Converter.Convert(moleculear, mols, ChemSim.getProperties().getMoleculeToMol());
 		}
 	}
 
@@ -88,11 +86,27 @@ public final class Launcher {
 		// Parse out the arguments
 		for (int ndx = 0; ndx < args.length; ndx+=2) {
 			switch(args[ndx]) {
+			case "-b":
+			case "--binary":
+				if (args[ndx + 1].equals("plain")) {
+					properties.setResultsFormat(Tracker.BINARY);
+				} else if (args[ndx + 1].equals("deflate")) {
+					properties.setResultsFormat(Tracker.BINARY_DEFLATE);
+				} else {
+					System.err.println("Unknown binary format, " + args[ndx + 1]);
+					printUsage();
+					System.exit(-1);
+				}
+				break;
 			case "-c":
 			case "--chemicals":
 				properties.setChemicalsFileName(args[ndx + 1]);
 				chemicals = true;
 				break;
+			case "-s":
+			case "--census":
+				properties.setCensusInterval(Integer.parseInt(args[ndx + 1]));
+				break;
 			case "-dt":
 				double value = Double.parseDouble(args[ndx + 1]);
 				properties.setDeltaT(value);
@@ -110,6 +124,14 @@ public final class Launcher {
 			case "--padding":
 				properties.setPadding(Integer.parseInt(args[ndx + 1]));
 				break;
+			case "-f":
+			case "--fields":
+				properties.setVoxelResolution(Integer.parseInt(args[ndx + 1]));
+				break;
+			case "-i":
+			case "--index":
+				properties.setSpatialIndex(args[ndx + 1]);
+				break;
 			case "-l":
 			case "--limit":
 				int limit = Double.valueOf(args[ndx + 1]).intValue();
@@ -123,6 +145,10 @@ public final class Launcher {
 			case "--verify":
 				Verifier.verify(args[ndx + 1], args[ndx + 2]);
 				System.exit(0);
+			case "-x":
+			case "--snapshot":
+				properties.setSnapshotInterval(Integer.parseInt(args[ndx + 1]));
+				break;
 			case "-w":
 			case "--write":
 				properties.setReportInterval(Integer.parseInt(args[ndx + 1]));
@@ -148,6 +174,13 @@ public final class Launcher {
 		}
 		properties.setMolarFileName(String.format(properties.getMolarFileName(), iteration));
 		properties.setResultsFileName(String.format(properties.getResultsFileName(), iteration));
+		properties.setCensusFileName(String.format(properties.getCensusFileName(), iteration));
+		properties.setSnapshotFileName(String.format(properties.getSnapshotFileName(), iteration));
+		properties.setVoxelFileName(String.format(properties.getVoxelFileName(), iteration));
+		if (properties.getResultsFormat() != Tracker.CSV) {
+			properties.setResultsFileName(BinaryResultsWriter.getFileName(properties.getResultsFileName()));
+			properties.setCensusFileName(BinaryResultsWriter.getFileName(properties.getCensusFileName()));
+		}
 	}
 	
 	private static void printUsage() {
@@ -158,12 +191,17 @@ public final class Launcher {
 		System.err.printf(format, "-c, --chemicals [file]", "CSV file with compounds present at start of experiment");
 		System.err.printf(format, "-r, --reactions [file]", "CSV file with reactions to be modeled");
 		System.err.println("\nOptional: ");
+		System.err.printf(format, "-b, --binary [format]", "Write the results and census as binary, plain or deflate, export them with BinaryExporter");
 		System.err.printf(format, "", "-dt [number]", "The delta T in seconds, default 1");
+		System.err.printf(format, "-f, --fields [number]", "Keep the count of each species in [number]^3 voxels, written each report, e.g. 16");
+		System.err.printf(format, "-i, --index [name]", "The spatial index to use: lattice, octree, or kdtree, default lattice");
 		System.err.printf(format, "-l, --limit [number]", "The maximum number of molecules to generate at initlization.");
 		System.err.printf(format, "-n, --run [number]", "The run number to apply to results files");
+		System.err.printf(format, "-s, --census [number]", "Take a census of the reactor each time step, verified by a full recount every [number] steps");
 		System.err.printf(format, "-p, --padding [number]", "The number of seconds to pad the estimated time by, default 900 seconds");
 		System.err.printf(format, "-w, --write [number]", "The report interval to print / save status on, default 60 iterations");
 		System.err.printf(format, "-t, --terminate [formula]", "Terminate the model when the given molecule has zero entities");
+		System.err.printf(format, "-x, --snapshot [number]", "Write the location of every molecule every [number] steps, for spatial analysis");
 		System.err.printf(format, "-v, --verify [file] [file]", "Verify the [reactions] and [chemicals] files are properly formatted and has balanced reactions.");
 		System.err.println("\nNOTE:");
 		System.err.println("JAVAGENT initialization is required, -javaagent:lib/SizeOf.jar");
@@ -1,5 +1,8 @@
 package edu.mtu.simulation;
 
+import edu.mtu.primitives.SpatialIndexFactory;
+import edu.mtu.simulation.tracking.Tracker;
+
 /**
  * This class contains various properties related to how the simulation should run 
  * and be managed. Note that the should not change once the application has been
@@ -19,8 +22,20 @@ public class SimulationProperties {
 	// How many time steps between reports to console
 	private int reportInterval = 60;	// 60 iterations = 1 minute at default deltaT
 	
+	// How many time steps between full recounts of the census, zero if the census is not taken
+	private int censusInterval = 0;
+	
+	// How many time steps between spatial snapshots, zero if they are not taken
+	private int snapshotInterval = 0;
+	
+	// The number of voxels along each axis of the concentration fields, zero if they are not kept
+	private int voxelResolution = 0;
+	
 	// Length of a time step in seconds
 	private double deltaT = 1;
+	
+	// The spatial index used to locate molecules in the reactor
+	private String spatialIndex = SpatialIndexFactory.LATTICE;
 		
 	// List of entities to terminate when zero
 	private String[] terminateOn = new String[0]; 
@@ -29,9 +44,15 @@ public class SimulationProperties {
 	private String chemicalsFileName = "";
 	private String reactionsFileName = "";
 	
+	// The format the results and census are written in
+	private int resultsFormat = Tracker.CSV;
+	
 	// Location of results
 	private String resultsFileName = "data/results%s.csv";
 	private String molarFileName = "data/molar%s.csv";
+	private String censusFileName = "data/census%s.csv";
+	private String snapshotFileName = "data/snapshots%s.bin.gz";
+	private String voxelFileName = "data/voxels%s.bin.gz";
 	
 	private static SimulationProperties instance = new SimulationProperties();
 	
@@ -47,6 +68,14 @@ public class SimulationProperties {
 		return instance;
 	}
 	
+	public String getCensusFileName() {
+		return censusFileName;
+	}
+	
+	public int getCensusInterval() {
+		return censusInterval;
+	}
+	
 	public double getDeltaT() {
 		return deltaT;
 	}
@@ -83,10 +112,42 @@ public class SimulationProperties {
 		return resultsFileName;
 	}
 	
+	public int getResultsFormat() {
+		return resultsFormat;
+	}
+	
+	public String getSnapshotFileName() {
+		return snapshotFileName;
+	}
+	
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+	
+	public String getSpatialIndex() {
+		return spatialIndex;
+	}
+	
 	public String[] getTerminationOn() {
 		return terminateOn;
 	}
+	
+	public String getVoxelFileName() {
+		return voxelFileName;
+	}
+	
+	public int getVoxelResolution() {
+		return voxelResolution;
+	}
 
+	public void setCensusFileName(String value) {
+		censusFileName = value;
+	}
+	
+	public void setCensusInterval(int value) {
+		censusInterval = value;
+	}
+	
 	public void setChemicalsFileName(String value) {
 		chemicalsFileName = value;
 	}
@@ -119,10 +180,34 @@ public class SimulationProperties {
 		resultsFileName = value;
 	}
 	
+	public void setResultsFormat(int value) {
+		resultsFormat = value;
+	}
+	
+	public void setSnapshotFileName(String value) {
+		snapshotFileName = value;
+	}
+	
+	public void setSnapshotInterval(int value) {
+		snapshotInterval = value;
+	}
+	
+	public void setSpatialIndex(String value) {
+		spatialIndex = value;
+	}
+	
 	public void setTerminateOn(String[] value) {
 		terminateOn = value;
 	}
 	
+	public void setVoxelFileName(String value) {
+		voxelFileName = value;
+	}
+	
+	public void setVoxelResolution(int value) {
+		voxelResolution = value;
+	}
+	
 	public void setDeltaT(double value) {
 		deltaT = value;
 	}
@@ -134,6 +134,8 @@ public class Schedule {
 			if (steppable.isActive()) {
 				steppable.doAction(timeStep);
 				pending.add(steppable);
+			} else {
+				steppable.dropped();
  			}
 		}
 			
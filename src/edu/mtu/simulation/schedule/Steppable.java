@@ -16,4 +16,17 @@ public abstract class Steppable {
 	public void deactivate() {
 		active = false;
 	}
+	
+	/**
+	 * Called by the schedule when it drops the steppable after it has been deactivated,
+	 * from this point on the schedule no longer refers to it.
+	 */
+	public void dropped() { }
+	
+	/**
+	 * Mark the steppable as active again so that it may be reused.
+	 */
+	protected void reactivate() {
+		active = true;
+	}
 }
@@ -0,0 +1,48 @@
+package edu.mtu.simulation.tracking;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracker whose counts may be updated from several threads at once, each count is a
+ * LongAdder so updates are spread across cells under contention and summed when read.
+ * The counts are exact once the updating threads are quiescent, e.g., at the end of
+ * a time step when they are written.
+ */
+public class AdderTrackEnties extends TrackEnties {
+
+	// The counts, indexed by species id
+	private LongAdder[] counts;
+
+	/**
+	 * Constructor, prepare the list of entities.
+	 */
+	public AdderTrackEnties(String fileName, boolean overwrite) {
+		super(fileName, overwrite);
+	}
+
+	@Override
+	protected void allocate(int species) {
+		counts = new LongAdder[species];
+		for (int ndx = 0; ndx < species; ndx++) {
+			counts[ndx] = new LongAdder();
+		}
+	}
+
+	@Override
+	public long getCount(int speciesId) {
+		return counts[speciesId].sum();
+	}
+
+	@Override
+	public void update(int speciesId, long count) {
+		counts[speciesId].add(count);
+	}
+
+	/**
+	 * Zeros the count of the given species id, this must not race with updates to it.
+	 */
+	@Override
+	public void zero(int speciesId) {
+		counts[speciesId].reset();
+	}
+}
@@ -0,0 +1,322 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the rows of counts reported by the tracker on a dedicated thread so that
+ * the simulation thread does not wait on the disk. The rows are copied into a ring
+ * of pre-allocated slots, which the writer thread formats into a reusable buffer and
+ * writes to the file channel once it has caught up. When the ring is full the
+ * simulation thread waits for a slot, so at most SLOTS rows are held in memory.
+ *
+ * The molar concentrations may also be written, in which case they are formatted
+ * from the same rows using the molecule to mol scaling. Alternatively the rows may be 
+ * written in the binary format, which notes the scaling instead.
+ */
+public class AsyncResultsWriter implements Runnable {
+
+	// The number of rows that may be waiting to be written
+	public final static int SLOTS = 64;
+
+	// The size of the buffer, it is written out when it is nearly full
+	private final static int BUFFER_SIZE = 1 << 16;
+	private final static int CELL_SIZE = 32;
+
+	private final static byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+	// The rows waiting to be written, a row is claimed by the simulation thread, filled,
+	// and then published, after which it belongs to the writer thread until it is written
+	private final double[] times = new double[SLOTS];
+	private final long[][] rows;
+	private long head;
+	private long tail;
+
+	private boolean closing;
+	private IOException error;
+	private long stalls;
+
+	// Null if the binary file is written instead
+	private final FileChannel results;
+	private final ByteBuffer resultsBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final BinaryResultsWriter binary;
+	private FileChannel molar;
+	private ByteBuffer molarBuffer;
+	private double moleculeToMol;
+
+	// Scratch space for formatting a long
+	private final byte[] digits = new byte[20];
+
+	private final Thread thread;
+
+	/**
+	 * Constructor, open the file, write the header, and start the writer thread.
+	 *
+	 * @param fileName The file name and path.
+	 * @param overwrite True if the file should be overwritten, as with the buffered writer an existing file is replaced either way.
+	 * @param header The header to start the file with.
+	 * @param columns The number of counts in each row.
+	 */
+	public AsyncResultsWriter(String fileName, boolean overwrite, String header, int columns) throws IOException {
+		rows = new long[SLOTS][columns];
+		results = open(fileName, overwrite, header);
+		binary = null;
+		thread = start();
+	}
+	
+	/**
+	 * Constructor, start the writer thread writing the rows to the binary file.
+	 * 
+	 * @param binary The binary file, which the header has been written to.
+	 * @param columns The number of counts in each row.
+	 */
+	public AsyncResultsWriter(BinaryResultsWriter binary, int columns) {
+		rows = new long[SLOTS][columns];
+		results = null;
+		this.binary = binary;
+		thread = start();
+	}
+	
+	private Thread start() {
+		Thread thread = new Thread(this, "results-writer");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Also write the rows as molar concentrations to the given file, this must be
+	 * called before the first row is published.
+	 *
+	 * @param fileName The file name and path.
+	 * @param overwrite True if the file should be overwritten, as with the buffered writer an existing file is replaced either way.
+	 * @param header The header to start the file with.
+	 * @param moleculeToMol The scaling from molecules to mols.
+	 */
+	public synchronized void setMolarFile(String fileName, boolean overwrite, String header, double moleculeToMol) throws IOException {
+		if (binary != null) {
+			binary.setMoleculeToMol(moleculeToMol);
+			return;
+		}
+		molar = open(fileName, overwrite, header);
+		molarBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.moleculeToMol = moleculeToMol;
+	}
+
+	/**
+	 * Claim the next row to be filled by the simulation thread, waiting if all of the
+	 * rows are waiting to be written.
+	 *
+	 * @return The row to fill, or null if the writer has been closed.
+	 */
+	public long[] claim() throws IOException {
+		synchronized (this) {
+			if (head - tail == SLOTS) {
+				stalls++;
+			}
+			while (head - tail == SLOTS && !closing && error == null) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			if (error != null) {
+				throw error;
+			}
+			if (closing) {
+				return null;
+			}
+		}
+		return rows[(int)(head % SLOTS)];
+	}
+
+	/**
+	 * Publish the row that was claimed so that it is written.
+	 *
+	 * @param time The time step the row was sampled at.
+	 */
+	public synchronized void publish(double time) {
+		times[(int)(head % SLOTS)] = time;
+		head++;
+		notifyAll();
+	}
+
+	/**
+	 * Write any rows that are waiting, close the files, and stop the writer thread.
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			closing = true;
+			notifyAll();
+		}
+		if (Thread.currentThread() != thread) {
+			try {
+				thread.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Get the number of times the simulation thread had to wait for a row.
+	 */
+	public synchronized long getStalls() {
+		return stalls;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				long available;
+				synchronized (this) {
+					while (tail == head && !closing) {
+						wait();
+					}
+					if (tail == head) {
+						break;
+					}
+					available = head;
+				}
+
+				// Format the rows outside of the lock, the simulation thread will not
+				// touch them until tail is moved past them
+				for (long slot = tail; slot < available; slot++) {
+					int ndx = (int)(slot % SLOTS);
+					if (binary != null) {
+						binary.write(times[ndx], rows[ndx]);
+					} else {
+						writeRow(times[ndx], rows[ndx]);
+					}
+				}
+				if (binary == null) {
+					drain(results, resultsBuffer);
+				}
+				if (molar != null) {
+					drain(molar, molarBuffer);
+				}
+
+				synchronized (this) {
+					tail = available;
+					notifyAll();
+				}
+			}
+
+			// Finish the files in the same way as the buffered writer
+			if (binary != null) {
+				binary.close();
+				return;
+			}
+			put(results, resultsBuffer, NEWLINE);
+			drain(results, resultsBuffer);
+			results.close();
+			if (molar != null) {
+				put(molar, molarBuffer, NEWLINE);
+				drain(molar, molarBuffer);
+				molar.close();
+			}
+		} catch (IOException ex) {
+			synchronized (this) {
+				error = ex;
+				notifyAll();
+			}
+		} catch (InterruptedException ex) {
+			// Only the simulation stops the writer, so just exit
+		}
+	}
+
+	/**
+	 * Open the file and write the header, like the buffered writer an existing file is
+	 * replaced whether or not it is to be overwritten.
+	 */
+	private FileChannel open(String fileName, boolean overwrite, String header) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer buffer = ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		return channel;
+	}
+
+	/**
+	 * Format the row into the buffers, the cells match those of the buffered writer.
+	 */
+	private void writeRow(double time, long[] row) throws IOException {
+		putDouble(results, resultsBuffer, time);
+		for (long count : row) {
+			putLong(results, resultsBuffer, count);
+		}
+		put(results, resultsBuffer, NEWLINE);
+
+		if (molar != null) {
+			putDouble(molar, molarBuffer, time);
+			for (long count : row) {
+				putDouble(molar, molarBuffer, count / moleculeToMol);
+			}
+			put(molar, molarBuffer, NEWLINE);
+		}
+	}
+
+	private void putDouble(FileChannel channel, ByteBuffer buffer, double value) throws IOException {
+		String cell = Double.toString(value);
+		reserve(channel, buffer);
+		for (int ndx = 0; ndx < cell.length(); ndx++) {
+			buffer.put((byte)cell.charAt(ndx));
+		}
+		buffer.put((byte)',');
+	}
+
+	private void putLong(FileChannel channel, ByteBuffer buffer, long value) throws IOException {
+		reserve(channel, buffer);
+		if (value == Long.MIN_VALUE) {
+			buffer.put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+			buffer.put((byte)',');
+			return;
+		}
+		if (value < 0) {
+			buffer.put((byte)'-');
+			value = -value;
+		}
+		int length = 0;
+		do {
+			digits[length++] = (byte)('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (length > 0) {
+			buffer.put(digits[--length]);
+		}
+		buffer.put((byte)',');
+	}
+
+	private void put(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+		reserve(channel, buffer);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Make sure there is room in the buffer for a cell, writing it out if there is not.
+	 */
+	private void reserve(FileChannel channel, ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < CELL_SIZE) {
+			drain(channel, buffer);
+		}
+	}
+
+	private void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,75 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.IOException;
+
+/**
+ * Export the binary time series written by ChemSim to the CSV files that it would
+ * otherwise have written, so that the existing analysis can still be used.
+ */
+public class BinaryExporter {
+
+	/**
+	 * Export the binary file given, usage: [binary] [results] [molar]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: BinaryExporter [binary file] [results file] [molar file, optional]");
+			System.exit(-1);
+		}
+		export(args[0], args[1], (args.length == 3) ? args[2] : null);
+	}
+
+	/**
+	 * Export the binary file to the CSV file of counts, and the CSV file of molar
+	 * concentrations if one is given and the scaling is known.
+	 *
+	 * @param source The binary file to read.
+	 * @param results The CSV file to write the counts to.
+	 * @param molar The CSV file to write the molar concentrations to, may be null.
+	 */
+	public static void export(String source, String results, String molar) throws IOException {
+		BinaryResultsReader reader = new BinaryResultsReader(source);
+		BufferedCsvWriter counts = null, mols = null;
+		try {
+			double scaling = reader.getMoleculeToMol();
+			counts = open(results, reader);
+			if (molar != null && !Double.isNaN(scaling)) {
+				mols = open(molar, reader);
+			}
+
+			long[] row = new long[reader.getColumns()];
+			for (long ndx = 0; ndx < reader.getRowCount(); ndx++) {
+				double time = reader.read(ndx, row);
+				counts.write(time);
+				for (long count : row) {
+					counts.write(count);
+				}
+				counts.newline();
+				if (mols != null) {
+					mols.write(time);
+					for (long count : row) {
+						mols.write(count / scaling);
+					}
+					mols.newline();
+				}
+			}
+		} finally {
+			reader.close();
+			if (counts != null) {
+				counts.close();
+			}
+			if (mols != null) {
+				mols.close();
+			}
+		}
+	}
+
+	private static BufferedCsvWriter open(String fileName, BinaryResultsReader reader) throws IOException {
+		BufferedCsvWriter writer = new BufferedCsvWriter(fileName, true);
+		writer.write(reader.getStarted());
+		writer.newline();
+		writer.write("Time");
+		writer.write(reader.getNames());
+		return writer;
+	}
+}
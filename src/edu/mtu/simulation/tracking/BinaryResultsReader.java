@@ -0,0 +1,275 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the binary time series written by BinaryResultsWriter, the file is memory-mapped
+ * and uncompressed rows are read directly from the mapping. Compressed chunks are
+ * inflated as they are needed, so rows are best read in order.
+ */
+public class BinaryResultsReader implements Closeable {
+
+	private final FileChannel channel;
+	private final MappedByteBuffer file;
+
+	// The contents of the header
+	private final boolean compressed;
+	private final int columns;
+	private final int rowBytes;
+	private final double moleculeToMol;
+	private final String started;
+	private final List<String> names;
+
+	// The index of the chunks
+	private final long rows;
+	private final int chunks;
+	private final long[] offsets;
+	private final int[] counts;
+	private final int[] sizes;
+	private final long[] firstRows;
+	private final double[] firstTimes;
+
+	// The chunk that was last inflated
+	private int cached = -1;
+	private ByteBuffer inflated;
+	private Inflater inflater;
+
+	/**
+	 * Open and map the file given.
+	 */
+	public BinaryResultsReader(String fileName) throws IOException {
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		if (channel.size() > Integer.MAX_VALUE) {
+			channel.close();
+			throw new IOException("The file is too large to map, " + fileName);
+		}
+		file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		file.order(ByteOrder.LITTLE_ENDIAN);
+		if (file.limit() < BinaryResultsWriter.SCALING_OFFSET + BinaryResultsWriter.TRAILER ||
+				file.getInt(0) != BinaryResultsWriter.MAGIC ||	file.getInt(file.limit() - 4) != BinaryResultsWriter.MAGIC) {
+			channel.close();
+			throw new IOException("The file is not a complete binary results file, " + fileName);
+		}
+		if (file.getInt(4) != BinaryResultsWriter.VERSION) {
+			channel.close();
+			throw new IOException("Unsupported binary results version " + file.getInt(4) + ", " + fileName);
+		}
+
+		// Read the header
+		compressed = (file.getInt(8) & BinaryResultsWriter.DEFLATE) != 0;
+		columns = file.getInt(12);
+		rowBytes = (columns + 1) * 8;
+		moleculeToMol = file.getDouble(BinaryResultsWriter.SCALING_OFFSET);
+		file.position(BinaryResultsWriter.SCALING_OFFSET + 8);
+		started = getString(file);
+		List<String> list = new ArrayList<String>(columns);
+		for (int ndx = 0; ndx < columns; ndx++) {
+			list.add(getString(file));
+		}
+		names = Collections.unmodifiableList(list);
+
+		// Read the index
+		int trailer = file.limit() - BinaryResultsWriter.TRAILER;
+		long indexOffset = file.getLong(trailer);
+		rows = file.getLong(trailer + 8);
+		chunks = file.getInt(trailer + 16);
+		offsets = new long[chunks];
+		counts = new int[chunks];
+		sizes = new int[chunks];
+		firstRows = new long[chunks];
+		firstTimes = new double[chunks];
+		long row = 0;
+		for (int ndx = 0; ndx < chunks; ndx++) {
+			int entry = (int)indexOffset + ndx * BinaryResultsWriter.INDEX_ENTRY;
+			offsets[ndx] = file.getLong(entry);
+			counts[ndx] = file.getInt(entry + 8);
+			sizes[ndx] = file.getInt(entry + 12);
+			firstTimes[ndx] = file.getDouble(entry + 16);
+			firstRows[ndx] = row;
+			row += counts[ndx];
+		}
+		if (compressed) {
+			inflater = new Inflater();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (inflater != null) {
+			inflater.end();
+		}
+		channel.close();
+	}
+
+	/**
+	 * Get the number of count columns in each row.
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Get the scaling from molecules to mols, NaN if it does not apply.
+	 */
+	public double getMoleculeToMol() {
+		return moleculeToMol;
+	}
+
+	/**
+	 * Get the names of the columns.
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * Get the number of rows in the file.
+	 */
+	public long getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Get the time the tracking started.
+	 */
+	public String getStarted() {
+		return started;
+	}
+
+	/**
+	 * Returns true if the chunks are compressed.
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * Find the first row at or after the time given using the index.
+	 *
+	 * @return The row, or the row count if all of the rows are before the time.
+	 */
+	public long findRow(double time) throws IOException {
+		// Find the last chunk that starts at or before the time
+		int low = 0, high = chunks - 1, chunk = 0;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (firstTimes[middle] <= time) {
+				chunk = middle;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		// Then scan the chunk for the row
+		long row = (chunks == 0) ? 0 : firstRows[chunk];
+		while (row < rows && getTime(row) < time) {
+			row++;
+		}
+		return row;
+	}
+
+	/**
+	 * Get the time the given row was sampled at.
+	 */
+	public double getTime(long row) throws IOException {
+		return Double.longBitsToDouble(locate(row).getLong(position(row)));
+	}
+
+	/**
+	 * Read the given row.
+	 *
+	 * @param row The row to read.
+	 * @param counts to copy the count of each column to.
+	 * @return The time the row was sampled at.
+	 */
+	public double read(long row, long[] counts) throws IOException {
+		ByteBuffer buffer = locate(row);
+		int position = position(row);
+		for (int ndx = 0; ndx < columns; ndx++) {
+			counts[ndx] = buffer.getLong(position + (ndx + 1) * 8);
+		}
+		return Double.longBitsToDouble(buffer.getLong(position));
+	}
+
+	/**
+	 * Get the buffer that holds the row, inflating its chunk if need be.
+	 */
+	private ByteBuffer locate(long row) throws IOException {
+		if (row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+		}
+		if (!compressed) {
+			return file;
+		}
+		int chunk = chunkOf(row);
+		if (chunk != cached) {
+			int length = counts[chunk] * rowBytes;
+			if (inflated == null || inflated.capacity() < length) {
+				inflated = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			byte[] input = new byte[sizes[chunk]];
+			ByteBuffer source = file.duplicate();
+			source.position((int)offsets[chunk]);
+			source.get(input);
+			try {
+				inflater.reset();
+				inflater.setInput(input);
+				int read = 0;
+				while (read < length) {
+					int count = inflater.inflate(inflated.array(), read, length - read);
+					if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+						throw new IOException("Chunk " + chunk + " is truncated");
+					}
+					read += count;
+				}
+			} catch (DataFormatException ex) {
+				throw new IOException("Chunk " + chunk + " is corrupt", ex);
+			}
+			cached = chunk;
+		}
+		return inflated;
+	}
+
+	/**
+	 * Get the position of the row in the buffer returned by locate.
+	 */
+	private int position(long row) {
+		if (!compressed) {
+			return (int)offsets[0] + (int)row * rowBytes;
+		}
+		return (int)(row - firstRows[cached]) * rowBytes;
+	}
+
+	private int chunkOf(long row) {
+		int low = 0, high = chunks - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (firstRows[middle] <= row) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
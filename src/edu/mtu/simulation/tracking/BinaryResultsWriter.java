@@ -0,0 +1,198 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the tracked counts as a compact binary time series, which is a fraction of
+ * the size of the CSV files and can be memory-mapped by BinaryResultsReader. All
+ * values are little-endian and the file is laid out as,
+ *
+ * Header: MAGIC, VERSION, flags, and the number of columns as ints, the molecule to
+ * mol scaling as a double (NaN if it does not apply), followed by the start time and
+ * the name of each column as an int length and UTF-8 bytes.
+ *
+ * Rows: the time as the bits of a double followed by the count of each column as
+ * longs. The rows are written in chunks, which are Deflate compressed if the DEFLATE
+ * flag is set and otherwise follow each other directly.
+ *
+ * Index: the offset, rows, bytes, and time of the first row of each chunk, followed by
+ * the offset of the index, the number of rows and chunks, and the MAGIC again.
+ */
+public class BinaryResultsWriter {
+
+	public final static int MAGIC = 0x53524843;
+	public final static int VERSION = 1;
+
+	// The flag for Deflate compressed chunks
+	public final static int DEFLATE = 1;
+
+	// The offset of the molecule to mol scaling in the header
+	public final static int SCALING_OFFSET = 16;
+
+	// The size of each index entry and the trailer
+	public final static int INDEX_ENTRY = 24;
+	public final static int TRAILER = 24;
+
+	// The target size of a chunk before it is compressed
+	private final static int CHUNK_BYTES = 1 << 16;
+
+	private FileChannel channel;
+	private long position;
+
+	// The chunk that is being filled, and the index of those written
+	private final ByteBuffer chunk;
+	private ByteBuffer index;
+	private double firstTime;
+	private int chunks;
+	private long rows;
+	private final int columns;
+
+	// Null unless the chunks are compressed
+	private Deflater deflater;
+	private byte[] compressed;
+
+	/**
+	 * Open the file and write the header.
+	 *
+	 * @param fileName The file name and path.
+	 * @param started The time the tracking started.
+	 * @param names The names of the columns.
+	 * @param moleculeToMol The scaling from molecules to mols, or NaN if not yet known.
+	 * @param deflate True if the chunks should be compressed.
+	 */
+	public BinaryResultsWriter(String fileName, String started, List<String> names, double moleculeToMol, boolean deflate) throws IOException {
+		columns = names.size();
+		int rowBytes = (columns + 1) * 8;
+		chunk = ByteBuffer.allocate(Math.max(1, CHUNK_BYTES / rowBytes) * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+		index = ByteBuffer.allocate(64 * INDEX_ENTRY).order(ByteOrder.LITTLE_ENDIAN);
+		if (deflate) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			compressed = new byte[chunk.capacity() + 1024];
+		}
+
+		// Prepare the header
+		int size = SCALING_OFFSET + 8 + 4 + started.length() * 3;
+		for (String name : names) {
+			size += 4 + name.length() * 3;
+		}
+		ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(deflate ? DEFLATE : 0).putInt(columns);
+		header.putDouble(moleculeToMol);
+		putString(header, started);
+		for (String name : names) {
+			putString(header, name);
+		}
+		header.flip();
+
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		write(header);
+	}
+
+	/**
+	 * Get the name of the binary file that goes with the CSV file given.
+	 */
+	public static String getFileName(String csvFileName) {
+		return csvFileName.endsWith(".csv") ? csvFileName.substring(0, csvFileName.length() - 4) + ".bin" : csvFileName + ".bin";
+	}
+
+	/**
+	 * Set the molecule to mol scaling in the header.
+	 */
+	public void setMoleculeToMol(double moleculeToMol) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putDouble(moleculeToMol).flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, SCALING_OFFSET + buffer.position());
+		}
+	}
+
+	/**
+	 * Add a row to the file.
+	 *
+	 * @param time The time the counts were sampled at.
+	 * @param counts The count of each column.
+	 */
+	public void write(double time, long[] counts) throws IOException {
+		if (chunk.position() == 0) {
+			firstTime = time;
+		}
+		chunk.putLong(Double.doubleToRawLongBits(time));
+		for (int ndx = 0; ndx < columns; ndx++) {
+			chunk.putLong(counts[ndx]);
+		}
+		rows++;
+		if (!chunk.hasRemaining()) {
+			writeChunk();
+		}
+	}
+
+	/**
+	 * Write the last chunk and the index, then close the file.
+	 */
+	public void close() throws IOException {
+		writeChunk();
+		long indexOffset = position;
+		index.flip();
+		write(index);
+
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER).order(ByteOrder.LITTLE_ENDIAN);
+		trailer.putLong(indexOffset).putLong(rows).putInt(chunks).putInt(MAGIC).flip();
+		write(trailer);
+		channel.close();
+		if (deflater != null) {
+			deflater.end();
+		}
+	}
+
+	private void writeChunk() throws IOException {
+		int count = chunk.position() / ((columns + 1) * 8);
+		if (count == 0) {
+			return;
+		}
+
+		// Compress the chunk if need be, the buffer is sized to hold incompressible data
+		long offset = position;
+		chunk.flip();
+		if (deflater == null) {
+			write(chunk);
+		} else {
+			deflater.reset();
+			deflater.setInput(chunk.array(), 0, chunk.limit());
+			deflater.finish();
+			int length = 0;
+			while (!deflater.finished()) {
+				length += deflater.deflate(compressed, length, compressed.length - length);
+			}
+			write(ByteBuffer.wrap(compressed, 0, length));
+		}
+		chunk.clear();
+
+		// Note the chunk in the index
+		if (index.remaining() < INDEX_ENTRY) {
+			ByteBuffer resized = ByteBuffer.allocate(index.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+			index.flip();
+			index = resized.put(index);
+		}
+		index.putLong(offset).putInt(count).putInt((int)(position - offset)).putDouble(firstTime);
+		chunks++;
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer);
+		}
+	}
+
+	private static void putString(ByteBuffer buffer, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.putInt(bytes.length).put(bytes);
+	}
+}
@@ -92,6 +92,13 @@ public class BufferedCsvWriter {
 		writer.write(value + ",");
 	}	
 	
+	/**
+	 * Write the text to the file as is.
+	 */
+	public void writeRaw(String text) throws IOException {
+		writer.write(text);
+	}
+	
 	/**
 	 * Write the indicated value to the file as a cell.
 	 */
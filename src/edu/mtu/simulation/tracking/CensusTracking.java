@@ -1,60 +1,167 @@
 package edu.mtu.simulation.tracking;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import edu.mtu.compound.MoleculeFactory;
+import edu.mtu.primitives.EntityStore;
+import edu.mtu.primitives.SpatialIndex;
+import edu.mtu.primitives.SpatialIndexListener;
 import edu.mtu.reaction.ReactionRegistry;
-import edu.mtu.compound.Molecule;
-import edu.mtu.reactor.Reactor;
 
 /**
  * This class conducts a census of the molecules in the model at the end of each 
- * time step, it is not tuned for performance and instead favors accuracy. Due to
- * the limitations of the model, the census cannot track the products so it is 
- * best used to validate the reactants are being counted correctly.
+ * time step. The counts are kept up to date by the reactor as molecules are added
+ * and removed, so writing them costs O(species) per time step. Due to the limitations 
+ * of the model, the census cannot track the products so it is best used to validate 
+ * the reactants are being counted correctly.
  * 
- * NOT recommended for use in time critical application. 
+ * Periodically the molecules in the reactor are recounted from scratch on a background
+ * thread, the recount is compared to the census and to the tracker and any drift is 
+ * reported. Only the tags of the molecules are copied on the simulation thread.
  */
-public class CensusTracking extends Tracker {	
+public class CensusTracking extends Tracker implements SpatialIndexListener {	
+	
+	// The census, indexed by species id
+	private long[] counts;
+	
+	// The species id of each of the entities, in the order they are written, and 
+	// if the entity is placed in the reactor or only counted
+	private int[] columns;
+	private boolean[] agents;
+	
+	// The store of the reactor that is being counted
+	private EntityStore store;
+	
+	// The number of time steps between full recounts
+	private int interval;
+	
+	// The snapshot for the recount, these are only reused once the recount is done
+	private int[] tags = new int[0];
+	private int[] flags = new int[0];
+	private long[] expected;
+	private long[] tracked;
+	private final AtomicBoolean verifying = new AtomicBoolean(false);
+	private final ExecutorService verifier;
+	
+	// The number of recounts that found drift
+	private volatile int drifts;
+	
+	// Set once the census is complete, the shutdown hook may complete it while the 
+	// simulation thread is still counting
+	private volatile boolean completed;
+	
+	// The binary file and the row written to it, null if the census is written as CSV
+	private BinaryResultsWriter binary;
+	private long[] row;
+	
 	/**
 	 * Constructor, prepare the list of entities.
+	 * 
+	 * @param index of the reactor, this should be empty.
+	 * @param interval The number of time steps between full recounts of the reactor. 
 	 */
-	public CensusTracking(String fileName, boolean overwrite) {
-		super(fileName, overwrite);
+	public CensusTracking(String fileName, boolean overwrite, SpatialIndex index, int interval) {
+		this(fileName, overwrite, index, interval, CSV);
 	}
 	
 	/**
-	 * Iteratively count all of the molecules in the model.
+	 * Constructor, prepare the list of entities.
+	 * 
+	 * @param index of the reactor, this should be empty.
+	 * @param interval The number of time steps between full recounts of the reactor. 
+	 * @param format The format of the file, CSV, BINARY, or BINARY_DEFLATE.
 	 */
-	public void count() {
-		try {
-			// Count the entities
-			Map<String, Long> counts = new HashMap<String, Long>();
-			Molecule[] molecules = Reactor.getInstance().getMolecules();
-			for (Molecule molecule : molecules) {
-				if (!counts.containsKey(molecule.getFormula())) {
-					counts.put(molecule.getFormula(), 0L);
-				}
-				long value = counts.get(molecule.getFormula()) + 1;
-				counts.put(molecule.getFormula(), value);
+	public CensusTracking(String fileName, boolean overwrite, SpatialIndex index, int interval, int format) {
+		super(fileName, overwrite, format);
+		this.store = index.getStore();
+		this.interval = interval;
+		index.addListener(this);
+		
+		// Recount on a thread of our own that won't keep the simulation alive
+		verifier = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "census");
+				thread.setDaemon(true);
+				return thread;
 			}
-							
-			// Write them to the file
-			for (String entity : entities) {
-				// Write a sentinel value for products
-				if (!ReactionRegistry.getInstance().hasReactants(entity)) {
-					writer.write(-1);
-					continue;
+		});
+	}
+	
+	@Override
+	protected void prepare() {
+		super.prepare();
+		
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		counts = new long[registry.getSpeciesCount()];
+		expected = new long[counts.length];
+		columns = new int[entities.size()];
+		agents = new boolean[entities.size()];
+		tracked = new long[entities.size()];
+		for (int ndx = 0; ndx < columns.length; ndx++) {
+			columns[ndx] = registry.getSpeciesId(entities.get(ndx));
+			agents[ndx] = MoleculeFactory.isAgent(entities.get(ndx));
+		}
+	}
+	
+	@Override
+	protected void open(String fileName, boolean overwrite) throws IOException {
+		if (format == CSV) {
+			super.open(fileName, overwrite);
+			return;
+		}
+		
+		// The census is of molecules, so there is no molar scaling
+		binary = openBinary(fileName, Double.NaN);
+		row = new long[columns.length];
+	}
+	
+	@Override
+	public void added(int id) {
+		counts[store.tag[id]]++;
+	}
+	
+	@Override
+	public void moved(int id, int x, int y, int z) {
+		// The census does not depend upon the location
+	}
+	
+	@Override
+	public void removed(int id) {
+		counts[store.tag[id]]--;
+	}
+	
+	/**
+	 * Write the census, and start a recount if one is due.
+	 * 
+	 * @param step The current time step.
+	 * @param time The current time.
+	 * @param tracker to compare the recount to.
+	 */
+	public synchronized void count(int step, double time, TrackEnties tracker) {
+		if (completed) {
+			return;
+		}
+		try {
+			// Write the entities, using a sentinel value for products
+			if (binary != null) {
+				for (int ndx = 0; ndx < columns.length; ndx++) {
+					row[ndx] = agents[ndx] ? counts[columns[ndx]] : -1;
 				}
-				if (counts.containsKey(entity)) {
-					writer.write(counts.get(entity));
-				} else {
-					writer.write(0);
+				binary.write(time, row);
+			} else {
+				writer.write(time);
+				for (int ndx = 0; ndx < columns.length; ndx++) {
+					writer.write(agents[ndx] ? counts[columns[ndx]] : -1);
 				}
+				writer.newline();
+				writer.flush();
 			}
-			writer.newline();
-			writer.flush();
 		} catch (IOException ex) {
 			// Since we don't expect this to happen and don't have a means of recovering
 			// treat this as a fatal error
@@ -62,5 +169,102 @@ public class CensusTracking extends Tracker {
 			System.err.println(ex.getMessage());
 			System.exit(-1);
 		}
+		
+		// Skip the recount if it isn't due or the last one is still running
+		if (step % interval != 0 || !verifying.compareAndSet(false, true)) {
+			return;
+		}
+		
+		// Take a snapshot of the reactor and the counts
+		int size = store.getHighWater();
+		if (tags.length < size) {
+			tags = new int[store.tag.length];
+			flags = new int[store.flags.length];
+		}
+		System.arraycopy(store.tag, 0, tags, 0, size);
+		System.arraycopy(store.flags, 0, flags, 0, size);
+		System.arraycopy(counts, 0, expected, 0, counts.length);
+		for (int ndx = 0; ndx < columns.length; ndx++) {
+			tracked[ndx] = tracker.getCount(columns[ndx]);
+		}
+		verifier.execute(new Recount(step, size));
+	}
+	
+	@Override
+	public void complete() {
+		synchronized (this) {
+			completed = true;
+		}
+		verifier.shutdown();
+		try {
+			verifier.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		if (drifts != 0) {
+			System.err.println("Census drift was found by " + drifts + " recount(s)");
+		}
+		if (binary != null) {
+			try {
+				binary.close();
+			} catch (IOException ex) {
+				// Wrapping up, do nothing
+			}
+			return;
+		}
+		super.complete();
+	}
+	
+	/**
+	 * Get the number of recounts that have found drift.
+	 */
+	public int getDrifts() {
+		return drifts;
+	}
+	
+	/**
+	 * Recount the snapshot and compare it to the census and the tracker.
+	 */
+	private class Recount implements Runnable {
+		private final int step;
+		private final int size;
+		
+		public Recount(int step, int size) {
+			this.step = step;
+			this.size = size;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				long[] recount = new long[expected.length];
+				for (int id = 0; id < size; id++) {
+					if ((flags[id] & EntityStore.ALIVE) != 0) {
+						recount[tags[id]]++;
+					}
+				}
+				
+				boolean drift = false;
+				for (int ndx = 0; ndx < recount.length; ndx++) {
+					if (recount[ndx] != expected[ndx]) {
+						System.err.println(String.format("Census drift at step %d: %s has %d molecules but the census has %d", 
+								step, ReactionRegistry.getInstance().getSpecies(ndx), recount[ndx], expected[ndx]));
+						drift = true;
+					}
+				}
+				for (int ndx = 0; ndx < columns.length; ndx++) {
+					if (agents[ndx] && recount[columns[ndx]] != tracked[ndx]) {
+						System.err.println(String.format("Census drift at step %d: %s has %d molecules but the tracker has %d", 
+								step, entities.get(ndx), recount[columns[ndx]], tracked[ndx]));
+						drift = true;
+					}
+				}
+				if (drift) {
+					drifts++;
+				}
+			} finally {
+				verifying.set(false);
+			}
+		}
 	}
 }
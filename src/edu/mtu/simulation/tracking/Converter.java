@@ -1,60 +1,348 @@
 package edu.mtu.simulation.tracking;
 
-import java.io.FileReader;
 import java.io.IOException;
-
-import au.com.bytecode.opencsv.CSVReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
- * Read the molecular counts written by ChemSim and write then as molar values.
+ * Read the molecular counts written by ChemSim and write then as molar values. The
+ * tracker writes the molar values as the simulation runs, so this is only needed
+ * offline, e.g., to convert results using a different scaling.
+ *
+ * The source is memory-mapped a window at a time and each window is split into
+ * segments of whole lines that are converted in parallel, the numbers are parsed
+ * directly from the bytes and the converted segments are written out together.
  */
 public class Converter {
+
+	// The size of the windows the source is mapped in and of the segments that are 
+	// converted in parallel, these are only changed by the tests
+	static int window = 64 << 20;
+	static int segment = 1 << 20;
+
+	// Counts with more digits than this are parsed as text so they convert exactly
+	private final static int DIGITS = 15;
+
 	/**
-	 * Read the molecular count and write the molar concentration to the destination file.
-	 * 
+	 * Convert the results file given, usage: [results] [molar] [scaling]
+	 */
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			System.err.println("Usage: Converter [results file] [molar file] [molecule to mol scaling]");
+			System.exit(-1);
+		}
+		Convert(args[0], args[1], Double.parseDouble(args[2]));
+	}
+
+	/**
+	 * Read the molecular count and write the molar concentration to the destination file,
+	 * the throughput is printed when done.
+	 *
 	 * @param source csv file to read molecular counts from.
 	 * @param destintation file to write molar counts to.
 	 * @param scaling factor to be applied.
 	 */
 	public static void Convert(String source, String destintation, double scaling) {
-		CSVReader reader = null;
-		BufferedCsvWriter writer = null;
-		
 		try {
-			// Open the files
-			reader = new CSVReader(new FileReader(source));
-			writer = new BufferedCsvWriter(destintation);
-			
-			// Read and echo the first two lines
-			writer.write(reader.readNext());
-			writer.write(reader.readNext());
-			
-			// Read, convert, and write the enteries
-			String[] entries;
-			while ((entries = reader.readNext()) != null) {
-				
-				// First entry is the time, just echo it
-				writer.write(entries[0]);
-				
-				// Convert the rest of the lines
-				for (int ndx = 1; ndx < entries.length; ndx++) {
-					if (entries[ndx].isEmpty()) {
-						continue;
+			long start = System.nanoTime();
+			long bytes = convert(source, destintation, scaling);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("Converted %.1f MB in %.2f seconds, %.1f MB/s", bytes / 1e6, seconds, bytes / 1e6 / seconds));
+		} catch (IOException ex) {
+			System.err.println(ex);
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Read the molecular count and write the molar concentration to the destination file.
+	 *
+	 * @return The number of bytes that were read.
+	 */
+	public static long convert(String source, String destintation, double scaling) throws IOException {
+		FileChannel in = FileChannel.open(Paths.get(source), StandardOpenOption.READ);
+		FileChannel out = FileChannel.open(Paths.get(destintation), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			long size = in.size();
+			long position = 0;
+			int header = 2;
+			while (position < size) {
+				// Map the next window, ending on a whole line unless it is the last
+				int length = (int)Math.min(window, size - position);
+				MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int end = length;
+				if (position + length < size) {
+					end = lastLine(mapped, length);
+					while (end == 0) {
+						if (length == Integer.MAX_VALUE) {
+							throw new IOException("Line is too long to convert at " + position);
+						}
+						length = (int)Math.min(Math.min(2L * length, Integer.MAX_VALUE), size - position);
+						mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+						end = (position + length < size) ? lastLine(mapped, length) : length;
 					}
-					double value = Double.parseDouble(entries[ndx]) / scaling;
-					writer.write(value);										
 				}
-				writer.newline();
-				writer.flush();
+
+				// Echo the first two lines
+				int start = 0;
+				while (header > 0 && start < end) {
+					int next = nextLine(mapped, start, end);
+					ByteBuffer echo = mapped.duplicate();
+					echo.position(start).limit(next);
+					write(out, echo);
+					start = next;
+					header--;
+				}
+
+				// Split the remainder into segments of whole lines and convert them
+				List<Segment> segments = new ArrayList<Segment>();
+				while (start < end) {
+					int next = (end - start > segment) ? nextLine(mapped, start + segment, end) : end;
+					segments.add(new Segment(mapped, start, next, scaling));
+					start = next;
+				}
+				ForkJoinPool.commonPool().invoke(new Segments(segments));
+
+				// Write the converted segments together
+				ByteBuffer[] buffers = new ByteBuffer[segments.size()];
+				for (int ndx = 0; ndx < buffers.length; ndx++) {
+					buffers[ndx] = segments.get(ndx).getOutput();
+				}
+				write(out, buffers);
+				position += end;
 			}
 
-			// Clean-up
-			writer.close();
-			reader.close();
+			// Finish with a newline, as the CSV writer does when it is closed
+			write(out, ByteBuffer.wrap(System.lineSeparator().getBytes(StandardCharsets.US_ASCII)));
+			return size;
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * Get the position after the last newline in the buffer, zero if there is none.
+	 */
+	private static int lastLine(ByteBuffer buffer, int length) {
+		for (int ndx = length - 1; ndx >= 0; ndx--) {
+			if (buffer.get(ndx) == '\n') {
+				return ndx + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Get the position after the next newline at or after the start, or the end.
+	 */
+	private static int nextLine(ByteBuffer buffer, int start, int end) {
+		for (int ndx = start; ndx < end; ndx++) {
+			if (buffer.get(ndx) == '\n') {
+				return ndx + 1;
+			}
+		}
+		return end;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer... buffers) throws IOException {
+		long remaining = 0;
+		for (ByteBuffer buffer : buffers) {
+			remaining += buffer.remaining();
+		}
+		while (remaining > 0) {
+			remaining -= channel.write(buffers);
+		}
+	}
+
+	/**
+	 * Convert the segments in parallel.
+	 */
+	@SuppressWarnings("serial")
+	private static class Segments extends RecursiveAction {
+		private final List<Segment> segments;
+
+		public Segments(List<Segment> segments) {
+			this.segments = segments;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(segments);
+		}
+	}
+
+	/**
+	 * Convert a segment of whole lines, the time is echoed and the counts are scaled.
+	 * Blank lines are written as a single empty cell, as the CSV writer did.
+	 */
+	@SuppressWarnings("serial")
+	private static class Segment extends RecursiveAction {
+		private final ByteBuffer source;
+		private final int start;
+		private final int end;
+		private final double scaling;
+
+		private byte[] output;
+		private int length;
+		private final StringBuilder cell = new StringBuilder(32);
+
+		// Most counts do not change between rows, so the last count of each column is 
+		// kept along with its converted cell
+		private long[] lastCounts = new long[64];
+		private byte[][] lastCells = new byte[64][];
+
+		public Segment(ByteBuffer source, int start, int end, double scaling) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+			this.scaling = scaling;
+		}
+
+		/**
+		 * Get the converted segment.
+		 */
+		public ByteBuffer getOutput() {
+			return ByteBuffer.wrap(output, 0, length);
+		}
+
+		@Override
+		protected void compute() {
+			// The scaled counts are usually about twice as long as the counts
+			output = new byte[(end - start) * 2 + 64];
+
+			int ndx = start;
+			while (ndx < end) {
+				// Blank lines only have the empty time
+				byte value = source.get(ndx);
+				if (value == '\n' || value == '\r') {
+					put((byte)',');
+					ndx = copyNewline(ndx);
+					continue;
+				}
+
+				// Echo the time
+				while (ndx < end && (value = source.get(ndx)) != ',' && value != '\r' && value != '\n') {
+					put(value);
+					ndx++;
+				}
+				put((byte)',');
+
+				// Convert the counts
+				int column = 0;
+				while (ndx < end && source.get(ndx) == ',') {
+					ndx++;
+					ndx = convert(ndx, column++);
+				}
+				ndx = copyNewline(ndx);
+			}
+		}
+
+		/**
+		 * Convert the cell that starts at the index given and return the index after it.
+		 */
+		private int convert(int ndx, int column) {
+			int first = ndx;
+			boolean negative = false, exact = true;
+			long count = 0;
+			int digits = 0;
+			byte value;
+			while (ndx < end && (value = source.get(ndx)) != ',' && value != '\r' && value != '\n') {
+				if (value >= '0' && value <= '9') {
+					count = count * 10 + (value - '0');
+					digits++;
+				} else if (value == '-' && ndx == first) {
+					negative = true;
+				} else {
+					exact = false;
+				}
+				ndx++;
+			}
+
+			// Empty cells are dropped
+			if (ndx == first) {
+				return ndx;
+			}
+
+			// Reuse the last cell of the column if the count has not changed, and parse 
+			// anything that isn't a plain count as text
+			double parsed;
+			boolean memo = exact && digits > 0 && digits <= DIGITS;
+			if (memo) {
+				count = negative ? -count : count;
+				if (column >= lastCounts.length) {
+					lastCounts = Arrays.copyOf(lastCounts, column * 2);
+					lastCells = Arrays.copyOf(lastCells, column * 2);
+				}
+				byte[] last = lastCells[column];
+				if (last != null && lastCounts[column] == count) {
+					for (byte character : last) {
+						put(character);
+					}
+					return ndx;
+				}
+				parsed = count;
+			} else {
+				byte[] text = new byte[ndx - first];
+				for (int offset = 0; offset < text.length; offset++) {
+					text[offset] = source.get(first + offset);
+				}
+				parsed = Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+			}
+
+			cell.setLength(0);
+			cell.append(parsed / scaling).append(',');
+			if (!memo) {
+				for (int offset = 0; offset < cell.length(); offset++) {
+					put((byte)cell.charAt(offset));
+				}
+				return ndx;
+			}
 			
-		} catch (IOException ex) {
-			System.err.println(ex);
-			System.exit(-1);
-		} 
+			byte[] converted = lastCells[column];
+			if (converted == null || converted.length != cell.length()) {
+				converted = new byte[cell.length()];
+				lastCells[column] = converted;
+			}
+			for (int offset = 0; offset < converted.length; offset++) {
+				converted[offset] = (byte)cell.charAt(offset);
+				put(converted[offset]);
+			}
+			lastCounts[column] = count;
+			return ndx;
+		}
+
+		/**
+		 * Copy the newline at the index given, if any, and return the index after it.
+		 */
+		private int copyNewline(int ndx) {
+			if (ndx < end && source.get(ndx) == '\r') {
+				put((byte)'\r');
+				ndx++;
+			}
+			if (ndx < end && source.get(ndx) == '\n') {
+				put((byte)'\n');
+				ndx++;
+			}
+			return ndx;
+		}
+
+		private void put(byte value) {
+			if (length == output.length) {
+				byte[] resized = new byte[output.length * 2];
+				System.arraycopy(output, 0, resized, 0, length);
+				output = resized;
+			}
+			output[length++] = value;
+		}
 	}
 }
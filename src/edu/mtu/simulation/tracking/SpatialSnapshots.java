@@ -0,0 +1,302 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import edu.mtu.primitives.EntityStore;
+import edu.mtu.primitives.SpatialIndex;
+import edu.mtu.reaction.ReactionRegistry;
+
+/**
+ * Periodically write the species and location of every molecule in the reactor to a
+ * gzip compressed binary file so that their distribution can be examined. On the
+ * simulation thread the snapshot is only a copy of the arrays of the store, the
+ * molecules are packed and written on a background thread. If that thread is still
+ * writing the last snapshot when the next is due, the snapshot is skipped.
+ *
+ * The time spent copying is measured against the time the simulation has run, and
+ * when it exceeds the budget the interval between snapshots is doubled.
+ *
+ * All values are little-endian, the file starts with MAGIC, VERSION, the dimensions
+ * of the reactor, and the number of species as ints, followed by the name of each
+ * species as an int length and UTF-8 bytes. Each snapshot is the step as an int, the
+ * time as a double, the number of molecules as an int, the species id of each molecule
+ * as ints, and the packed location of each molecule as longs.
+ */
+public class SpatialSnapshots {
+
+	public final static int MAGIC = 0x534E5053;
+	public final static int VERSION = 1;
+
+	// The fraction of the run that may be spent copying by default
+	public final static double DEFAULT_BUDGET = 0.01;
+
+	// The bits used for each coordinate when the location is packed
+	private final static int COORDINATE_BITS = 21;
+	private final static long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+	// The store of the reactor that is being written
+	private final EntityStore store;
+
+	private int interval;
+	private final double budget;
+
+	// The copy of the store, these are only reused once the last snapshot is written
+	private int[] x = new int[0];
+	private int[] y = new int[0];
+	private int[] z = new int[0];
+	private int[] tags = new int[0];
+	private int[] flags = new int[0];
+	private final AtomicBoolean writing = new AtomicBoolean(false);
+	private final ExecutorService writer;
+	private final OutputStream out;
+	private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+	// Note the time the simulation thread spent copying and the time the run started
+	private final long started;
+	private long blocked;
+	private volatile long writingTime;
+
+	private volatile int written;
+	private int taken;
+	private int skipped;
+	private volatile boolean failed;
+	private boolean completed;
+
+	/**
+	 * Constructor, open the file and write the header.
+	 *
+	 * @param index of the reactor.
+	 * @param dimensions of the reactor.
+	 * @param interval The number of time steps between snapshots.
+	 * @param budget The fraction of the run that may be spent copying the store.
+	 */
+	public SpatialSnapshots(String fileName, SpatialIndex index, int[] dimensions, int interval, double budget) throws IOException {
+		this.store = index.getStore();
+		this.interval = interval;
+		this.budget = budget;
+
+		out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16), 1 << 16);
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		buffer.putInt(MAGIC).putInt(VERSION);
+		buffer.putInt(dimensions[0]).putInt(dimensions[1]).putInt(dimensions[2]);
+		buffer.putInt(registry.getSpeciesCount());
+		for (int ndx = 0; ndx < registry.getSpeciesCount(); ndx++) {
+			byte[] name = registry.getSpecies(ndx).getBytes(StandardCharsets.UTF_8);
+			reserve(4 + name.length);
+			buffer.putInt(name.length).put(name);
+		}
+		drain();
+
+		// Write on a thread of our own that won't keep the simulation alive
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "snapshots");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		started = System.nanoTime();
+	}
+
+	/**
+	 * Pack the location into a long.
+	 */
+	public static long pack(int x, int y, int z) {
+		return x | ((long)y << COORDINATE_BITS) | ((long)z << (2 * COORDINATE_BITS));
+	}
+
+	/**
+	 * Unpack the location from a long.
+	 */
+	public static int[] unpack(long packed) {
+		return new int[] {
+			(int)(packed & COORDINATE_MASK),
+			(int)((packed >>> COORDINATE_BITS) & COORDINATE_MASK),
+			(int)((packed >>> (2 * COORDINATE_BITS)) & COORDINATE_MASK)
+		};
+	}
+
+	/**
+	 * Take a snapshot if one is due.
+	 *
+	 * @param step The current time step.
+	 * @param time The current time.
+	 */
+	public synchronized void snapshot(int step, double time) {
+		if (completed || failed || step % interval != 0) {
+			return;
+		}
+
+		// Skip the snapshot if the last one is still being written
+		if (!writing.compareAndSet(false, true)) {
+			skipped++;
+			return;
+		}
+
+		// Copy the store
+		long start = System.nanoTime();
+		int size = store.getHighWater();
+		if (tags.length < size) {
+			x = new int[store.x.length];
+			y = new int[store.y.length];
+			z = new int[store.z.length];
+			tags = new int[store.tag.length];
+			flags = new int[store.flags.length];
+		}
+		System.arraycopy(store.x, 0, x, 0, size);
+		System.arraycopy(store.y, 0, y, 0, size);
+		System.arraycopy(store.z, 0, z, 0, size);
+		System.arraycopy(store.tag, 0, tags, 0, size);
+		System.arraycopy(store.flags, 0, flags, 0, size);
+		writer.execute(new Write(step, time, size));
+
+		// Back off if the copies are taking too much of the run, the first snapshot is
+		// taken as the run starts so it is not checked
+		long now = System.nanoTime();
+		blocked += now - start;
+		if (++taken > 1 && blocked > budget * (now - started)) {
+			interval *= 2;
+			System.err.println(String.format("Spatial snapshots are over budget (%.2f%% of the run), interval increased to %d steps",
+					100.0 * getOverhead(), interval));
+		}
+	}
+
+	/**
+	 * Write the last snapshot and close the file.
+	 */
+	public void complete() {
+		synchronized (this) {
+			completed = true;
+		}
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+			out.close();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (IOException ex) {
+			// Wrapping up, do nothing
+		}
+	}
+
+	/**
+	 * Get the current number of time steps between snapshots.
+	 */
+	public synchronized int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Get the fraction of the run the simulation thread has spent copying.
+	 */
+	public synchronized double getOverhead() {
+		return blocked / (double)(System.nanoTime() - started);
+	}
+
+	/**
+	 * Get the number of snapshots skipped since the last was still being written.
+	 */
+	public synchronized int getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Get the number of snapshots written.
+	 */
+	public int getWritten() {
+		return written;
+	}
+
+	/**
+	 * Get the total time spent writing the snapshots on the background thread, in seconds.
+	 */
+	public double getWritingTime() {
+		return writingTime / 1e9;
+	}
+
+	/**
+	 * Make sure there is room in the buffer, writing it out if there is not.
+	 */
+	private void reserve(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			drain();
+			if (buffer.capacity() < bytes) {
+				buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+	}
+
+	private void drain() throws IOException {
+		out.write(buffer.array(), 0, buffer.position());
+		buffer.clear();
+	}
+
+	/**
+	 * Pack and write the copy of the store.
+	 */
+	private class Write implements Runnable {
+		private final int step;
+		private final double time;
+		private final int size;
+
+		public Write(int step, double time, int size) {
+			this.step = step;
+			this.time = time;
+			this.size = size;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			boolean done = false;
+			try {
+				int count = 0;
+				for (int id = 0; id < size; id++) {
+					if ((flags[id] & EntityStore.ALIVE) != 0) {
+						count++;
+					}
+				}
+
+				reserve(16);
+				buffer.putInt(step).putDouble(time).putInt(count);
+				for (int id = 0; id < size; id++) {
+					if ((flags[id] & EntityStore.ALIVE) != 0) {
+						reserve(4);
+						buffer.putInt(tags[id]);
+					}
+				}
+				for (int id = 0; id < size; id++) {
+					if ((flags[id] & EntityStore.ALIVE) != 0) {
+						reserve(8);
+						buffer.putLong(pack(x[id], y[id], z[id]));
+					}
+				}
+				drain();
+				done = true;
+			} catch (IOException ex) {
+				System.err.println("IOException occured while writing the spatial snapshot");
+				System.err.println(ex.getMessage());
+				failed = true;
+			} finally {
+				writingTime += System.nanoTime() - start;
+				writing.set(false);
+				if (done) {
+					written++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package edu.mtu.simulation.tracking;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracker whose counts may be updated from several threads at once, each thread adds
+ * to one of a fixed number of stripes chosen by its id and the stripes are summed when
+ * a count is read. Each stripe is padded to a multiple of a cache line so threads on
+ * different stripes do not contend. The counts are exact once the updating threads are
+ * quiescent, e.g., at the end of a time step when they are written.
+ */
+public class StripedTrackEnties extends TrackEnties {
+
+	// The number of stripes, this must be a power of two
+	public final static int STRIPES = 16;
+
+	// The number of longs in a cache line
+	private final static int LINE = 8;
+
+	// The counts, stripe by stripe, and the distance between the stripes
+	private AtomicLongArray counts;
+	private int stride;
+
+	/**
+	 * Constructor, prepare the list of entities.
+	 */
+	public StripedTrackEnties(String fileName, boolean overwrite) {
+		super(fileName, overwrite);
+	}
+
+	@Override
+	protected void allocate(int species) {
+		stride = ((species + LINE - 1) / LINE + 1) * LINE;
+		counts = new AtomicLongArray(STRIPES * stride);
+	}
+
+	@Override
+	public long getCount(int speciesId) {
+		long total = 0;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			total += counts.get(stripe * stride + speciesId);
+		}
+		return total;
+	}
+
+	@Override
+	public void update(int speciesId, long count) {
+		int stripe = (int)Thread.currentThread().getId() & (STRIPES - 1);
+		counts.getAndAdd(stripe * stride + speciesId, count);
+	}
+
+	/**
+	 * Zeros the count of the given species id, this must not race with updates to it.
+	 */
+	@Override
+	public void zero(int speciesId) {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			counts.set(stripe * stride + speciesId, 0);
+		}
+	}
+}
@@ -1,15 +1,31 @@
 package edu.mtu.simulation.tracking;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+
+import edu.mtu.reaction.ReactionRegistry;
 
 /**
  * This class provides counts the entities that are in the model based upon the 
  * count at model initialization and when they are added to the model.
+ * 
+ * The counts are kept in an array indexed by the species id, the methods that take
+ * a formula look up the species id and are intended for code that is not run for 
+ * every molecule. Only a single thread may update the counts, StripedTrackEnties and 
+ * AdderTrackEnties keep the counts exact when molecules are updated from several.
+ * 
+ * The counts are written by an AsyncResultsWriter, so reset only copies them into 
+ * one of its rows rather than waiting on the disk.
  */
-public class TrackEnties extends Tracker {
-	private Map<String, Long> counts;
+public class TrackEnties extends Tracker {
+	
+	// The counts, indexed by species id
+	private long[] counts;
+	
+	// The species id of each of the entities, in the order they are written
+	protected int[] columns;
+	
+	// Writes the counts, and molar concentrations if set, off of the simulation thread
+	private AsyncResultsWriter results;
 	
 	/**
 	 * Constructor, prepare the list of entities.
@@ -18,43 +34,116 @@ public class TrackEnties extends Tracker {
 		super(fileName, overwrite);
 	}
 	
+	/**
+	 * Constructor, prepare the list of entities.
+	 * 
+	 * @param format The format of the file, CSV, BINARY, or BINARY_DEFLATE.
+	 */
+	public TrackEnties(String fileName, boolean overwrite, int format) {
+		super(fileName, overwrite, format);
+	}
+	
+	/**
+	 * Write the molar concentrations to the given file along with the counts, this must
+	 * be called before the first reset. The binary format only notes the scaling, the 
+	 * molar concentrations are written when it is exported.
+	 * 
+	 * @param fileName The file name and path.
+	 * @param overwrite True if the file should be overwritten, false otherwise.
+	 * @param moleculeToMol The scaling from molecules to mols.
+	 */
+	public void setMolarFile(String fileName, boolean overwrite, double moleculeToMol) throws IOException {
+		results.setMolarFile(fileName, overwrite, getHeader(), moleculeToMol);
+	}
+	
+	/**
+	 * Write any counts that are waiting and close the files, this is safe to call from
+	 * the shutdown hook while the simulation thread is still reporting.
+	 */
+	@Override
+	public void complete() {
+		try {
+			results.close();
+		} catch (IOException ex) {
+			// Wrapping up, just note the error
+			System.err.println("IOException occured while writing the entity counts");
+			System.err.println(ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Get the number of reports that had to wait for the writer to catch up.
+	 */
+	public long getStalls() {
+		return results.getStalls();
+	}
+	
 	/**
 	 * Get the count of molecules for the given formula.
 	 */
 	public long getCount(String formula) {
-		if (counts.containsKey(formula)) {
-			return counts.get(formula);
-		}
-		return 0;		
+		int speciesId = ReactionRegistry.getInstance().getSpeciesId(formula);
+		return (speciesId == ReactionRegistry.UNREGISTERED) ? 0 : getCount(speciesId);		
+	}
+	
+	/**
+	 * Get the count of molecules for the given species id.
+	 */
+	public long getCount(int speciesId) {
+		return counts[speciesId];
 	}
 	
 	/**
 	 * Prepare to start tracking entities.
-	 */
+	 */
 	@Override
 	protected void prepare() {
 		super.prepare();
-				
-		// Prepare the counts
-		counts = new HashMap<String, Long>();
-		for (String entity : entities) {
-			counts.put(entity, 0L);
+				
+		// Prepare the counts, note that every species is counted but only
+		// the entities are written
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		allocate(registry.getSpeciesCount());
+		columns = new int[entities.size()];
+		for (int ndx = 0; ndx < columns.length; ndx++) {
+			columns[ndx] = registry.getSpeciesId(entities.get(ndx));
+		}
+	}
+	
+	/**
+	 * Open the results file using the asynchronous writer.
+	 */
+	@Override
+	protected void open(String fileName, boolean overwrite) throws IOException {
+		if (format == CSV) {
+			results = new AsyncResultsWriter(fileName, overwrite, getHeader(), columns.length);
+		} else {
+			results = new AsyncResultsWriter(openBinary(fileName, Double.NaN), columns.length);
 		}
 	}
 	
 	/**
-	 * Write the contents to the CSV file and set the counts to zero.
+	 * Allocate the storage for the counts of the given number of species.
+	 */
+	protected void allocate(int species) {
+		counts = new long[species];
+	}
+	
+	/**
+	 * Write the contents to the CSV file, the rows are written once the writer catches 
+	 * up so flush is implied.
 	 */
 	public void reset(boolean flush, double timeStep) {
 		try {
-			writer.write(timeStep);
-			for (String entity : entities) {
-				writer.write(counts.get(entity));
+			// Once the files are closed the counts are no longer written
+			long[] row = results.claim();
+			if (row == null) {
+				return;
 			}
-			writer.newline();
-			if (flush) {
-				writer.flush();
+			for (int ndx = 0; ndx < columns.length; ndx++) {
+				row[ndx] = getCount(columns[ndx]);
 			}
+			results.publish(timeStep);
 		} catch (IOException ex) {
 			// Since we don't expect this to happen and don't have a means of recovering
 			// treat this as a fatal error
@@ -68,18 +157,33 @@ public class TrackEnties extends Tracker {
 	 * Update the total for the given entity by the given count. 
 	 */
 	public void update(String formula, long count) {
-		if (counts.containsKey(formula)) {
-			long value = counts.get(formula);
-			counts.put(formula, value + count);
+		int speciesId = ReactionRegistry.getInstance().getSpeciesId(formula);
+		if (speciesId != ReactionRegistry.UNREGISTERED) {
+			update(speciesId, count);
 		}
 	}
 	
+	/**
+	 * Update the total for the given species id by the given count.
+	 */
+	public void update(int speciesId, long count) {
+		counts[speciesId] += count;
+	}
+	
 	/**
 	 * Zeros the count of the given entity.
 	 */
 	public void zero(String formula) {
-		if (counts.containsKey(formula)) {
-			counts.put(formula, 0l);
+		int speciesId = ReactionRegistry.getInstance().getSpeciesId(formula);
+		if (speciesId != ReactionRegistry.UNREGISTERED) {
+			zero(speciesId);
 		}
 	}
+	
+	/**
+	 * Zeros the count of the given species id.
+	 */
+	public void zero(int speciesId) {
+		counts[speciesId] = 0;
+	}
 }
@@ -12,28 +12,38 @@ import edu.mtu.reaction.ReactionRegistry;
  * This abstract class wraps the common methods used when tracking molecules.
  */
 public abstract class Tracker {
+	
+	// The formats the tracking file may be written in
+	public final static int CSV = 0;
+	public final static int BINARY = 1;
+	public final static int BINARY_DEFLATE = 2;
+	
 	protected BufferedCsvWriter writer; 
 	protected List<String> entities;
+	protected int format;
+	
+	// The time the tracking started, as written to the file
+	protected String started;
 	
 	/**
 	 * Constructor, prepare the list of entities.
 	 */
-	public Tracker(String fileName, boolean overwrite) {				
+	public Tracker(String fileName, boolean overwrite) {
+		this(fileName, overwrite, CSV);
+	}
+	
+	/**
+	 * Constructor, prepare the list of entities.
+	 * 
+	 * @param format The format of the file, CSV, BINARY, or BINARY_DEFLATE.
+	 */
+	public Tracker(String fileName, boolean overwrite, int format) {
+		this.format = format;
 		try {
 			// Prepare the tracking file
 			prepare();
-			writer = new BufferedCsvWriter(fileName, overwrite);
-			
-			// Note the start time
-			writer.write(LocalDateTime.now().toString());
-			writer.newline();
-						
-			// Write the time column
-			writer.write("Time");
-			
-			// Write the names of the entities out
-			writer.write(entities);
-			writer.flush();
+			started = LocalDateTime.now().toString();
+			open(fileName, overwrite);
 		} catch (IOException ex) {
 			System.err.println(ex);
 			System.err.println("Unable to create the tracking file at, " + fileName);
@@ -53,6 +63,35 @@ public abstract class Tracker {
 		}
 	}
 	
+	/**
+	 * Open the tracking file and write the header.
+	 */
+	protected void open(String fileName, boolean overwrite) throws IOException {
+		writer = new BufferedCsvWriter(fileName, overwrite);
+		writer.writeRaw(getHeader());
+		writer.flush();
+	}
+	
+	/**
+	 * Open the tracking file in the binary format, the header is written by the writer.
+	 */
+	protected BinaryResultsWriter openBinary(String fileName, double moleculeToMol) throws IOException {
+		return new BinaryResultsWriter(fileName, started, entities, moleculeToMol, format == BINARY_DEFLATE);
+	}
+	
+	/**
+	 * Get the header of the file, the start time followed by the time column and the 
+	 * names of the entities.
+	 */
+	protected String getHeader() {
+		StringBuilder header = new StringBuilder(started);
+		header.append(",").append(System.lineSeparator()).append("Time,");
+		for (String entity : entities) {
+			header.append(entity).append(',');
+		}
+		return header.append(System.lineSeparator()).toString();
+	}
+	
 	protected void prepare() {
 		// Note the entities that may will appear in the model over the entire run
 		entities = new ArrayList<String>(ReactionRegistry.getInstance().getEntityList());
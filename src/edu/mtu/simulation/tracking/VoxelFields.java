@@ -0,0 +1,267 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import edu.mtu.primitives.EntityStore;
+import edu.mtu.primitives.SpatialIndex;
+import edu.mtu.primitives.SpatialIndexListener;
+import edu.mtu.reaction.ReactionRegistry;
+
+/**
+ * The count of each species in coarse voxels of the reactor, which can be used to
+ * look for depletion zones and other spatial heterogeneity. The counts are kept up to
+ * date by the index as molecules are added, moved, and removed, so each update costs
+ * O(1) and a dump costs O(species * voxels) regardless of the number of molecules.
+ *
+ * The fields are dumped to a gzip compressed binary file on a background thread, all
+ * values are little-endian. The file starts with MAGIC, VERSION, the resolution, the
+ * dimensions of the reactor as ints, the molecule to mol scaling as a double, and the
+ * number of species as an int, followed by the name of each species as an int length
+ * and UTF-8 bytes. Each dump is the time as a double followed by the counts as ints,
+ * for each species in turn the voxels are ordered by x, then y, then z.
+ */
+public class VoxelFields implements SpatialIndexListener {
+
+	public final static int MAGIC = 0x4C584F56;
+	public final static int VERSION = 1;
+
+	// The default number of voxels along each axis
+	public final static int DEFAULT_RESOLUTION = 16;
+
+	// The store of the reactor that is being counted
+	private final EntityStore store;
+
+	private final int resolution;
+	private final int[] dimensions;
+	private final int voxels;
+	private final int species;
+
+	// The counts, indexed by species id * voxels + voxel
+	private int[] counts;
+
+	// The copy of the counts being written, and the write that is using it
+	private int[] spare;
+	private Future<?> pending;
+	private final ExecutorService writer;
+
+	private final String fileName;
+	private OutputStream out;
+	private double moleculeToMol = Double.NaN;
+	private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+	private int dumps;
+	private boolean completed;
+
+	/**
+	 * Constructor, the file is opened with the first dump.
+	 *
+	 * @param index of the reactor, this should be empty.
+	 * @param dimensions of the reactor.
+	 * @param resolution The number of voxels along each axis.
+	 */
+	public VoxelFields(String fileName, SpatialIndex index, int[] dimensions, int resolution) {
+		this.fileName = fileName;
+		this.store = index.getStore();
+		this.dimensions = dimensions.clone();
+		this.resolution = resolution;
+		voxels = resolution * resolution * resolution;
+		species = ReactionRegistry.getInstance().getSpeciesCount();
+		counts = new int[species * voxels];
+		spare = new int[counts.length];
+		index.addListener(this);
+
+		// Write on a thread of our own that won't keep the simulation alive
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "voxels");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Set the molecule to mol scaling noted in the file, this must be called before the first dump.
+	 */
+	public void setMoleculeToMol(double moleculeToMol) {
+		this.moleculeToMol = moleculeToMol;
+	}
+
+	/**
+	 * Get the voxel that contains the location given.
+	 */
+	public int getVoxel(int x, int y, int z) {
+		return (axis(x, 0) * resolution + axis(y, 1)) * resolution + axis(z, 2);
+	}
+
+	/**
+	 * Get the count of the species in the voxel given.
+	 */
+	public int getCount(int speciesId, int voxel) {
+		return counts[speciesId * voxels + voxel];
+	}
+
+	/**
+	 * Get the number of dumps that have been made.
+	 */
+	public synchronized int getDumps() {
+		return dumps;
+	}
+
+	@Override
+	public void added(int id) {
+		counts[store.tag[id] * voxels + getVoxel(store.x[id], store.y[id], store.z[id])]++;
+	}
+
+	@Override
+	public void moved(int id, int x, int y, int z) {
+		int from = getVoxel(x, y, z);
+		int to = getVoxel(store.x[id], store.y[id], store.z[id]);
+		if (from != to) {
+			int offset = store.tag[id] * voxels;
+			counts[offset + from]--;
+			counts[offset + to]++;
+		}
+	}
+
+	@Override
+	public void removed(int id) {
+		counts[store.tag[id] * voxels + getVoxel(store.x[id], store.y[id], store.z[id])]--;
+	}
+
+	/**
+	 * Copy the counts and write them on the background thread, waiting for the last
+	 * dump to be written first.
+	 *
+	 * @param time The current time.
+	 */
+	public synchronized void dump(double time) {
+		if (completed) {
+			return;
+		}
+		await();
+		System.arraycopy(counts, 0, spare, 0, counts.length);
+		pending = writer.submit(new Write(time));
+		dumps++;
+	}
+
+	/**
+	 * Write the last dump and close the file.
+	 */
+	public void complete() {
+		synchronized (this) {
+			completed = true;
+			await();
+		}
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+			if (out != null) {
+				out.close();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (IOException ex) {
+			// Wrapping up, do nothing
+		}
+	}
+
+	/**
+	 * Get the voxel along the axis for the coordinate, locations on the far wall are
+	 * placed in the last voxel.
+	 */
+	private int axis(int value, int axis) {
+		return Math.min((int)((long)value * resolution / dimensions[axis]), resolution - 1);
+	}
+
+	/**
+	 * Wait for the last dump to be written so the spare can be reused.
+	 */
+	private void await() {
+		if (pending == null) {
+			return;
+		}
+		try {
+			pending.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			System.err.println("Error occured while writing the voxel fields");
+			System.err.println(ex.getCause().getMessage());
+		}
+		pending = null;
+	}
+
+	/**
+	 * Open the file and write the header.
+	 */
+	private void open() throws IOException {
+		out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16), 1 << 16);
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(resolution);
+		buffer.putInt(dimensions[0]).putInt(dimensions[1]).putInt(dimensions[2]);
+		buffer.putDouble(moleculeToMol).putInt(species);
+		for (int ndx = 0; ndx < species; ndx++) {
+			byte[] name = registry.getSpecies(ndx).getBytes(StandardCharsets.UTF_8);
+			reserve(4 + name.length);
+			buffer.putInt(name.length).put(name);
+		}
+	}
+
+	/**
+	 * Make sure there is room in the buffer, writing it out if there is not.
+	 */
+	private void reserve(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			drain();
+		}
+	}
+
+	private void drain() throws IOException {
+		out.write(buffer.array(), 0, buffer.position());
+		buffer.clear();
+	}
+
+	/**
+	 * Write the copy of the counts.
+	 */
+	private class Write implements Runnable {
+		private final double time;
+
+		public Write(double time) {
+			this.time = time;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (out == null) {
+					open();
+				}
+				reserve(8);
+				buffer.putDouble(time);
+				for (int count : spare) {
+					reserve(4);
+					buffer.putInt(count);
+				}
+				drain();
+			} catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+}
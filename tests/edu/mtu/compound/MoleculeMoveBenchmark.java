@@ -0,0 +1,79 @@
+package edu.mtu.compound;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import edu.mtu.reactor.Reactor;
+import edu.mtu.simulation.ChemSim;
+import edu.mtu.simulation.SimulationProperties;
+
+/**
+ * Benchmark for the cost of moving the molecules in the reactor, both the time
+ * taken and the heap allocated for each move. The allocation is measured for the
+ * benchmark thread using the HotSpot ThreadMXBean, the same counter the gc
+ * profiler of JMH uses, so a move that allocates nothing reports ~0 B/op.
+ *
+ * Run with: java -Xmx4g -javaagent:lib/SizeOf.jar -cp [classpath] edu.mtu.compound.MoleculeMoveBenchmark
+ */
+public class MoleculeMoveBenchmark {
+
+	private final static String reactionsFileName = "tests/reactions.csv";
+
+	private final static int COUNT = 1000000;
+	private final static int STEPS = 10;
+	private final static int WARMUP = 5;
+
+	// The experiment, as tests/chemicals.csv without the species that have no reactions
+	// or the decay of the hydrogen peroxide since nothing is stepped
+	private final static String CHEMICALS = "Volume,1.8\nRate,0\nName,Formula,Mols\n"
+			+ "Hydrogen Peroxide,H2O2,150\nAcetone,CH3COCH3,11\nWater,H2O,1001.1\n";
+
+	public static void main(String[] args) throws IOException {
+		// Set up the model as the launcher would, the results are not of interest
+		File chemicals = File.createTempFile("chemicals", ".csv");
+		chemicals.deleteOnExit();
+		try (FileWriter writer = new FileWriter(chemicals)) {
+			writer.write(CHEMICALS);
+		}
+		File results = File.createTempFile("results", ".csv");
+		results.deleteOnExit();
+		SimulationProperties properties = SimulationProperties.getInstance();
+		properties.setChemicalsFileName(chemicals.getAbsolutePath());
+		properties.setReactionsFileName(reactionsFileName);
+		properties.setResultsFileName(results.getAbsolutePath());
+		properties.setOverWriteResults(true);
+		properties.setInitialMolecules(COUNT);
+		ChemSim.getInstance().initialize(42);
+		Molecule[] molecules = Reactor.getInstance().getMolecules();
+
+		// Warm up, then time the moves and note what was allocated
+		for (int ndx = 0; ndx < WARMUP; ndx++) {
+			step(molecules);
+		}
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long allocated = bean.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		for (int ndx = 0; ndx < STEPS; ndx++) {
+			step(molecules);
+		}
+		long elapsed = System.nanoTime() - start;
+		allocated = bean.getThreadAllocatedBytes(thread) - allocated;
+
+		double moves = (double)molecules.length * STEPS;
+		System.out.println(String.format("%-10s %-15s %-15s", "Count", "Move (ns/op)", "Alloc (B/op)"));
+		System.out.println(String.format("%-10d %-15.1f %-15.3f", molecules.length, elapsed / moves, allocated / moves));
+		System.exit(0);
+	}
+
+	/**
+	 * Move every molecule once.
+	 */
+	private static void step(Molecule[] molecules) {
+		for (Molecule molecule : molecules) {
+			molecule.move();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package edu.mtu.primitives;
+
+import java.util.Random;
+
+import edu.mtu.reactor.Reactor;
+import edu.mtu.tests.TestEntity;
+
+/**
+ * Benchmark for the neighbor searches in the lattice. The reactor is scaled with
+ * the molecule count (as Reactor.calculateSize does) so the density is constant
+ * and the cost of a search should be flat as the count grows. Most of the entities
+ * are a bulk species that is never searched for, mirroring H2O2 in our networks.
+ * The cost of moving every entity once is also reported, as is the cost of a
+ * small sphere search for the bulk species using the cells, the points of the
+ * sphere, and the lattice itself, which only visits the points of the sphere when
+ * searching for colocated entities. A dense mix is run last since that is where
+ * the points of the sphere pay off.
+ *
+ * Run with: java -cp [classpath] edu.mtu.primitives.Sparse3DLatticeBenchmark
+ */
+public class Sparse3DLatticeBenchmark {
+
+	private final static int[] COUNTS = new int[] { 10000, 100000, 1000000 };
+	private final static int RADIUS = 308;
+	private final static int SMALL_RADIUS = 5;
+	private final static int SEARCHES = 100000;
+	private final static int STEP = 590;
+
+	private final static int PARTNER = 0;
+	private final static int SEARCHER = 1;
+	private final static int BULK = 2;
+	private final static int TAGS = 3;
+
+	public static void main(String[] args) {
+		System.out.println(String.format("%-10s %-10s %-15s %-15s %-15s %-15s %-15s %-15s", "Mix", "Count", "Cell (ns/op)", "Tag (ns/op)", "Move (ns/op)", "Cell r=5", "Sphere r=5", "Chosen r=5"));
+		for (int count : COUNTS) {
+			run("reactor", count, (int)Math.ceil(Math.cbrt(count / (8e-5 * Reactor.AvogadrosNumber)) * 1e9));
+		}
+		
+		// Dense mix, about one entity every eight cubic nanometers
+		run("dense", COUNTS[1], (int)Math.ceil(Math.cbrt(COUNTS[1] * 8.0)));
+	}
+	
+	/**
+	 * Fill a lattice of the given dimension and print the timings.
+	 */
+	private static void run(String mix, int count, int dimension) {
+		Random random = new Random(42);
+
+		// Fill the lattice, one searcher and ten partners per thousand bulk entities
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(count, TAGS, RADIUS);
+		int[] searchers = new int[count / 1000];
+		for (int ndx = 0; ndx < count; ndx++) {
+			TestEntity entity = new TestEntity((ndx < searchers.length) ? SEARCHER : (ndx % 100 == 0) ? PARTNER : BULK);
+			int id = lattice.add(entity, random.nextInt(dimension), random.nextInt(dimension), random.nextInt(dimension));
+			if (ndx < searchers.length) {
+				searchers[ndx] = id;
+			}
+		}
+
+		// Warm up, then time the searches, the tag based search is linear so scale it back
+		search(lattice, searchers, SEARCHES, false);
+		double cell = search(lattice, searchers, SEARCHES, false);
+		int searches = Math.max(SEARCHES / (count / COUNTS[0]) / 10, 10);
+		double tag = search(lattice, searchers, searches, true);
+		
+		// Warm up, then time the moves
+		move(lattice, dimension, random);
+		double move = move(lattice, dimension, random);
+
+		// Warm up, then time the small sphere searches on each path and the one the lattice picks
+		double[] small = new double[3];
+		for (int mode = 0; mode < small.length; mode++) {
+			small(lattice, searchers, SEARCHES, mode);
+			small[mode] = small(lattice, searchers, SEARCHES, mode);
+		}
+		System.out.println(String.format("%-10s %-10d %-15.1f %-15.1f %-15.1f %-15.1f %-15.1f %-15.1f", mix, count, cell, tag, move, small[0], small[1], small[2]));
+	}
+	
+	/**
+	 * Move every entity by a random step, return the average time for each in nanoseconds.
+	 */
+	private static double move(Sparse3DLattice lattice, int dimension, Random random) {
+		EntityStore store = lattice.getStore();
+		int count = store.getHighWater();
+		long start = System.nanoTime();
+		for (int id = 0; id < count; id++) {
+			int x = step(store.x[id], dimension, random);
+			int y = step(store.y[id], dimension, random);
+			int z = step(store.z[id], dimension, random);
+			lattice.setObjectLocation(id, x, y, z);
+		}
+		return (System.nanoTime() - start) / (double)count;
+	}
+
+	/**
+	 * Take a random step along one axis, clamped to the reactor.
+	 */
+	private static int step(int value, int dimension, Random random) {
+		value += random.nextInt(2 * STEP + 1) - STEP;
+		return Math.min(Math.max(value, 0), dimension);
+	}
+
+	/**
+	 * Run the small sphere searches for the bulk species and return the average time for each in nanoseconds,
+	 * the mode is 0 for the cells, 1 for the sphere offsets, and 2 for whichever the lattice picks.
+	 */
+	private static double small(Sparse3DLattice lattice, int[] searchers, int searches, int mode) {
+		EntityStore store = lattice.getStore();
+		SphereOffsets offsets = SphereOffsets.get(SMALL_RADIUS);
+		long start = System.nanoTime();
+		for (int ndx = 0; ndx < searches; ndx++) {
+			int id = searchers[ndx % searchers.length];
+			if (mode == 0) {
+				lattice.cellBasedSearch(id, BULK, SMALL_RADIUS, store.x[id], store.y[id], store.z[id]);
+			} else if (mode == 1) {
+				lattice.distanceBasedSearch(id, BULK, offsets, store.x[id], store.y[id], store.z[id]);
+			} else {
+				lattice.findFirstByTag(id, BULK, SMALL_RADIUS);
+			}
+		}
+		return (System.nanoTime() - start) / (double)searches;
+	}
+
+	/**
+	 * Run the searches and return the average time for each in nanoseconds.
+	 */
+	private static double search(Sparse3DLattice lattice, int[] searchers, int searches, boolean tagBased) {
+		EntityStore store = lattice.getStore();
+		long start = System.nanoTime();
+		for (int ndx = 0; ndx < searches; ndx++) {
+			int id = searchers[ndx % searchers.length];
+			if (tagBased) {
+				lattice.tagBasedSearch(id, PARTNER, RADIUS, store.x[id], store.y[id], store.z[id]);
+			} else {
+				lattice.cellBasedSearch(id, PARTNER, RADIUS, store.x[id], store.y[id], store.z[id]);
+			}
+		}
+		return (System.nanoTime() - start) / (double)searches;
+	}
+}
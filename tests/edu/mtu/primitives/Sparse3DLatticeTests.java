@@ -0,0 +1,191 @@
+package edu.mtu.primitives;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.mtu.tests.TestEntity;
+import sim.util.Bag;
+
+/**
+ * Tests to ensure that the lattice tracks the location of entities correctly.
+ */
+public class Sparse3DLatticeTests {
+
+	private final static int TAG = 0;
+	private final static int TAGS = 2;
+	private final static int RADIUS = 10;
+
+	/**
+	 * Test to make sure that only entities at the same point are colocated, including 
+	 * points that collided when the coordinates were hashed.
+	 */
+	@Test
+	public void colocationTest() {
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(10, TAGS, RADIUS);
+		TestEntity one = new TestEntity(TAG), two = new TestEntity(TAG), three = new TestEntity(TAG);
+		lattice.add(one, 0, 0, 0);
+		lattice.add(two, 20, 0, 0);
+		lattice.add(three, 0, 0, 0);
+
+		Bag bag = lattice.getColocatedObjects(one.getEntityId());
+		Assert.assertEquals(2, bag.numObjs);
+		Assert.assertTrue(bag.contains(one));
+		Assert.assertTrue(bag.contains(three));
+		Assert.assertEquals(1, lattice.getColocatedObjects(two.getEntityId()).numObjs);
+
+		// Moving one entity should leave the other on its own
+		lattice.setObjectLocation(three.getEntityId(), 0, 0, 1);
+		Assert.assertEquals(1, lattice.getColocatedObjects(one.getEntityId()).numObjs);
+		Assert.assertEquals(1, lattice.getColocatedObjects(three.getEntityId()).numObjs);
+		Assert.assertNull(lattice.getObjectsAtLocation(new int[] { 20, 0, 1 }));
+
+		// Removing an entity should empty its point
+		lattice.remove(two.getEntityId());
+		Assert.assertEquals(EntityStore.NONE, two.getEntityId());
+		Assert.assertNull(lattice.getObjectsAtLocation(new int[] { 20, 0, 0 }));
+	}
+
+	/**
+	 * Test to make sure removed entities are no longer found by their tag.
+	 */
+	@Test
+	public void tagRemovalTest() {
+		final int other = TAG + 1;
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(10, TAGS, RADIUS);
+		int searcher = lattice.add(new TestEntity(other), 0, 0, 0);
+		int one = lattice.add(new TestEntity(TAG), 5, 0, 0);
+		int two = lattice.add(new TestEntity(TAG), 0, 5, 0);
+
+		// Removing the first entity should leave the second as the only match
+		lattice.remove(one);
+		Assert.assertEquals(two, lattice.getFirstEntity(TAG));
+		Assert.assertEquals(two, lattice.findFirstByTag(searcher, TAG, RADIUS));
+
+		// Once the last is removed there should be nothing left to find
+		Assert.assertEquals((1L << TAG) | (1L << other), lattice.getLiveTags()[0]);
+		lattice.remove(two);
+		Assert.assertEquals(1L << other, lattice.getLiveTags()[0]);
+		Assert.assertEquals(EntityStore.NONE, lattice.getFirstEntity(TAG));
+		Assert.assertEquals(EntityStore.NONE, lattice.findFirstByTag(searcher, TAG, RADIUS));
+	}
+
+	/**
+	 * Test to make sure bulk removal only takes entities with the tag, and stops when they run out.
+	 */
+	@Test
+	public void removeNTest() {
+		final int other = TAG + 1;
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(10, TAGS, RADIUS);
+		TestEntity kept = new TestEntity(other);
+		lattice.add(kept, 0, 0, 0);
+		for (int ndx = 0; ndx < 5; ndx++) {
+			lattice.add(new TestEntity(TAG), ndx, 0, 0);
+		}
+
+		Assert.assertEquals(3, lattice.removeN(TAG, 3));
+		Assert.assertEquals(2, lattice.getEntityCount(TAG));
+		Assert.assertEquals(3, lattice.getStore().getCount());
+		Assert.assertEquals(2, lattice.removeN(TAG, 3));
+		Assert.assertEquals(EntityStore.NONE, lattice.getFirstEntity(TAG));
+		Assert.assertEquals(1L << other, lattice.getLiveTags()[0]);
+		Assert.assertNull(lattice.getObjectsAtLocation(new int[] { 1, 0, 0 }));
+
+		// The entity with the other tag should be untouched
+		Assert.assertEquals(1, lattice.getColocatedObjects(kept.getEntityId()).numObjs);
+	}
+
+	/**
+	 * Test to make sure that searches of small spheres through dense entities that visit
+	 * the points of the sphere find the closest entity as entities move and are removed,
+	 * and that the lattice, which only visits the points to find colocated entities, finds
+	 * an entity in the radius and prefers colocated ones.
+	 */
+	@Test
+	public void sphereSearchTest() {
+		final int radius = 4, dimension = 60, count = 3000;
+		Random random = new Random(42);
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(count, TAGS, 300);
+		EntityStore store = lattice.getStore();
+		SphereOffsets offsets = SphereOffsets.get(radius);
+		int[] ids = new int[count];
+		for (int ndx = 0; ndx < count; ndx++) {
+			ids[ndx] = lattice.add(new TestEntity(TAG), random.nextInt(dimension), random.nextInt(dimension), random.nextInt(dimension));
+		}
+
+		for (int round = 0; round < 5; round++) {
+			for (int id : ids) {
+				if (!store.isAlive(id)) {
+					continue;
+				}
+
+				// The match should be the closest entity, if there is one
+				long closest = Long.MAX_VALUE;
+				for (int check : ids) {
+					if (check != id && store.isAlive(check)) {
+						closest = Math.min(closest, distanceSquared(store, id, check));
+					}
+				}
+				int match = lattice.distanceBasedSearch(id, TAG, offsets, store.x[id], store.y[id], store.z[id]);
+				int first = lattice.findFirstByTag(id, TAG, radius);
+				int colocated = lattice.findFirstByTag(id, TAG, 0);
+				if (closest > radius * radius) {
+					Assert.assertEquals(EntityStore.NONE, match);
+					Assert.assertEquals(EntityStore.NONE, first);
+				} else {
+					Assert.assertEquals(closest, distanceSquared(store, id, match));
+					Assert.assertTrue(distanceSquared(store, id, first) <= radius * radius);
+					Assert.assertTrue(closest != 0 || distanceSquared(store, id, first) == 0);
+				}
+				Assert.assertEquals(closest == 0, colocated != EntityStore.NONE);
+				if (colocated != EntityStore.NONE) {
+					Assert.assertEquals(0, distanceSquared(store, id, colocated));
+				}
+			}
+
+			// Move everything and remove a few
+			for (int id : ids) {
+				if (store.isAlive(id)) {
+					lattice.setObjectLocation(id, random.nextInt(dimension), random.nextInt(dimension), random.nextInt(dimension));
+				}
+			}
+			for (int ndx = 0; ndx < 100; ndx++) {
+				int id = ids[random.nextInt(count)];
+				if (store.isAlive(id)) {
+					lattice.remove(id);
+				}
+			}
+		}
+	}
+
+	private static long distanceSquared(EntityStore store, int one, int two) {
+		long x = store.x[one] - store.x[two];
+		long y = store.y[one] - store.y[two];
+		long z = store.z[one] - store.z[two];
+		return x*x + y*y + z*z;
+	}
+
+	/**
+	 * Test to make sure the largest and smallest coordinates are distinct.
+	 */
+	@Test
+	public void extentsTest() {
+		final int max = (1 << 21) - 1;
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(10, TAGS, RADIUS);
+		TestEntity one = new TestEntity(TAG), two = new TestEntity(TAG);
+		lattice.add(one, max, max, max);
+		lattice.add(two, 0, 0, 0);
+		Assert.assertEquals(1, lattice.getColocatedObjects(one.getEntityId()).numObjs);
+		Assert.assertEquals(1, lattice.getColocatedObjects(two.getEntityId()).numObjs);
+	}
+
+	/**
+	 * Test to make sure locations outside of the lattice are rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void outOfBoundsTest() {
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(10, TAGS, RADIUS);
+		lattice.add(new TestEntity(TAG), -1, 0, 0);
+	}
+}
@@ -0,0 +1,137 @@
+package edu.mtu.primitives;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.mtu.reaction.MoleculeDescription;
+import edu.mtu.reaction.ReactionRegistry;
+import edu.mtu.reactor.Reactor;
+import edu.mtu.tests.TestEntity;
+
+/**
+ * Benchmark comparing the spatial indices on a reaction network. Each step moves
+ * every molecule and then every molecule with bimolecular reactions searches for
+ * each of its partners using the interaction radii of the network, as Reaction
+ * does. Two mixes are run: a dilute one where the organics and radicals are a
+ * small fraction of the molecules and a dense one mirroring the burst of hydroxyl
+ * radicals after the UV is turned on.
+ *
+ * Run with: java -cp [classpath] edu.mtu.primitives.SpatialIndexBenchmark [reactions file]
+ */
+public class SpatialIndexBenchmark {
+
+	private final static String reactionsFileName = "tests/reactions.csv";
+
+	private final static int[] COUNTS = new int[] { 100000, 1000000 };
+	private final static String[] INDICES = new String[] { SpatialIndexFactory.LATTICE, SpatialIndexFactory.OCTREE, SpatialIndexFactory.KDTREE };
+	private final static int STEP = 590;
+	private final static int STEPS = 3;
+
+	// The fraction of the molecules that are water, hydrogen peroxide, and hydroxyl, the
+	// remainder are split evenly between the rest of the species
+	private final static String[] BULK = new String[] { "H2O", "H2O2", "HO*" };
+	private final static double[] DILUTE = new double[] { 0.9, 0.095, 0.001 };
+	private final static double[] BURST = new double[] { 0.6, 0.1, 0.2 };
+
+	public static void main(String[] args) throws IOException {
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		registry.load((args.length > 0) ? args[0] : reactionsFileName);
+
+		System.out.println(String.format("%-8s %-10s %-10s %-15s %-15s %-10s", "Mix", "Index", "Count", "Search (ns/op)", "Move (ns/op)", "Searches"));
+		for (int count : COUNTS) {
+			run("dilute", DILUTE, count, registry);
+			run("burst", BURST, count, registry);
+		}
+	}
+
+	/**
+	 * Run the mix on each of the indices.
+	 */
+	private static void run(String mix, double[] fractions, int count, ReactionRegistry registry) {
+		// Note the species of each molecule, the same population is used for each index
+		List<MoleculeDescription> species = new ArrayList<MoleculeDescription>();
+		List<MoleculeDescription> rest = new ArrayList<MoleculeDescription>();
+		for (String formula : registry.getEntityList()) {
+			boolean bulk = false;
+			for (String value : BULK) {
+				bulk |= value.equals(formula);
+			}
+			if (!bulk) {
+				rest.add(registry.getMoleculeDescription(formula));
+			}
+		}
+		Random random = new Random(42);
+		for (int ndx = 0; ndx < count; ndx++) {
+			double value = random.nextDouble();
+			MoleculeDescription md = null;
+			for (int jdx = 0; jdx < BULK.length && md == null; jdx++) {
+				if (value < fractions[jdx]) {
+					md = registry.getMoleculeDescription(BULK[jdx]);
+				}
+				value -= fractions[jdx];
+			}
+			species.add((md != null) ? md : rest.get(random.nextInt(rest.size())));
+		}
+
+		int dimension = (int)Math.ceil(Math.cbrt(count / (8e-5 * Reactor.AvogadrosNumber)) * 1e9);
+		for (String name : INDICES) {
+			SpatialIndex index = SpatialIndexFactory.create(name, count, registry.getSpeciesCount(), registry.getMaxInteractionRadius());
+			random = new Random(42);
+			MoleculeDescription[] descriptions = new MoleculeDescription[count];
+			for (int ndx = 0; ndx < count; ndx++) {
+				MoleculeDescription md = species.get(ndx);
+				int id = index.add(new TestEntity(md.speciesId), random.nextInt(dimension), random.nextInt(dimension), random.nextInt(dimension));
+				descriptions[id] = md;
+			}
+
+			// Warm up, then time the steps
+			step(index, descriptions, dimension, random, new long[3]);
+			long[] totals = new long[3];
+			for (int ndx = 0; ndx < STEPS; ndx++) {
+				step(index, descriptions, dimension, random, totals);
+			}
+			System.out.println(String.format("%-8s %-10s %-10d %-15.1f %-15.1f %-10d", mix, name, count,
+					totals[0] / (double)Math.max(totals[2], 1), totals[1] / (double)(count * STEPS), totals[2] / STEPS));
+		}
+	}
+
+	/**
+	 * Move every molecule and then search for the partners of each. The time spent
+	 * searching, moving, and the number of searches are added to the totals.
+	 */
+	private static void step(SpatialIndex index, MoleculeDescription[] descriptions, int dimension, Random random, long[] totals) {
+		EntityStore store = index.getStore();
+		int count = store.getHighWater();
+
+		long start = System.nanoTime();
+		for (int id = 0; id < count; id++) {
+			index.setObjectLocation(id, step(store.x[id], dimension, random), step(store.y[id], dimension, random), step(store.z[id], dimension, random));
+		}
+		totals[1] += System.nanoTime() - start;
+
+		int searches = 0;
+		start = System.nanoTime();
+		for (int id = 0; id < count; id++) {
+			MoleculeDescription md = descriptions[id];
+			if (!md.hasBimolecular || md.isBSide) {
+				continue;
+			}
+			for (int ndx = 0; ndx < md.reactsWith.length; ndx++) {
+				index.findFirstByTag(id, md.reactsWith[ndx], md.interactionRadius[ndx]);
+				searches++;
+			}
+		}
+		totals[0] += System.nanoTime() - start;
+		totals[2] += searches;
+	}
+
+	/**
+	 * Take a random step along one axis, clamped to the reactor.
+	 */
+	private static int step(int value, int dimension, Random random) {
+		value += random.nextInt(2 * STEP + 1) - STEP;
+		return Math.min(Math.max(value, 0), dimension);
+	}
+}
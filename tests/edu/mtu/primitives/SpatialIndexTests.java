@@ -0,0 +1,135 @@
+package edu.mtu.primitives;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.mtu.tests.TestEntity;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Tests to ensure that the spatial indices agree with a brute force search as
+ * entities are added, moved, and removed.
+ */
+public class SpatialIndexTests {
+
+	private final static int[] TAGS = new int[] { 0, 1, 2 };
+	private final static int RADIUS = 50;
+	private final static int DIMENSION = 1000;
+	private final static int COUNT = 2000;
+	private final static int ROUNDS = 20;
+
+	@Test
+	public void kdTreeTest() {
+		check(SpatialIndexFactory.KDTREE);
+	}
+
+	@Test
+	public void latticeTest() {
+		check(SpatialIndexFactory.LATTICE);
+	}
+
+	@Test
+	public void octreeTest() {
+		check(SpatialIndexFactory.OCTREE);
+	}
+
+	/**
+	 * Churn the index and make sure every search agrees with a brute force search.
+	 */
+	private void check(String name) {
+		Random random = new Random(42);
+		SpatialIndex index = SpatialIndexFactory.create(name, COUNT / 4, TAGS.length, RADIUS);
+		EntityStore store = index.getStore();
+		IntArrayList ids = new IntArrayList();
+		for (int ndx = 0; ndx < COUNT; ndx++) {
+			ids.add(add(index, random));
+		}
+
+		for (int round = 0; round < ROUNDS; round++) {
+			// Move everything a bit, then replace some of the entities
+			for (int ndx = 0; ndx < ids.size(); ndx++) {
+				int id = ids.getInt(ndx);
+				index.setObjectLocation(id, step(store.x[id], random), step(store.y[id], random), step(store.z[id], random));
+			}
+			// Reorder the lists for the tags so the removals find the entities where they were swapped to
+			for (int tag : TAGS) {
+				int size = index.getEntityCount(tag);
+				for (int ndx = 0; ndx < size / 10; ndx++) {
+					index.swapEntities(tag, random.nextInt(size), random.nextInt(size));
+				}
+			}
+			for (int ndx = 0; ndx < COUNT / 10; ndx++) {
+				int slot = random.nextInt(ids.size());
+				index.remove(ids.getInt(slot));
+				ids.set(slot, add(index, random));
+			}
+
+			// Search from every entity for every tag
+			for (int ndx = 0; ndx < ids.size(); ndx++) {
+				int id = ids.getInt(ndx);
+				for (int tag : TAGS) {
+					int match = index.findFirstByTag(id, tag, RADIUS);
+					boolean expected = bruteForce(store, ids, id, tag, RADIUS);
+					Assert.assertEquals(name, expected, match != EntityStore.NONE);
+					if (match != EntityStore.NONE) {
+						Assert.assertTrue(name, store.isAlive(match));
+						Assert.assertEquals(name, tag, store.tag[match]);
+						Assert.assertTrue(name, distanceSquared(store, id, match) <= RADIUS * RADIUS);
+					}
+				}
+				Assert.assertEquals(name, colocated(store, ids, id), index.getColocatedObjects(id).numObjs);
+			}
+		}
+	}
+
+	/**
+	 * Add an entity with a random tag at a random location.
+	 */
+	private static int add(SpatialIndex index, Random random) {
+		TestEntity entity = new TestEntity(TAGS[random.nextInt(TAGS.length)]);
+		return index.add(entity, random.nextInt(DIMENSION), random.nextInt(DIMENSION), random.nextInt(DIMENSION));
+	}
+
+	/**
+	 * Returns true if any entity with the tag is in the radius of the given entity.
+	 */
+	private static boolean bruteForce(EntityStore store, IntArrayList ids, int id, int tag, int radius) {
+		for (int ndx = 0; ndx < ids.size(); ndx++) {
+			int check = ids.getInt(ndx);
+			if (check != id && store.tag[check] == tag && distanceSquared(store, id, check) <= radius * radius) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Count the entities at the same location as the given entity, including itself.
+	 */
+	private static int colocated(EntityStore store, IntArrayList ids, int id) {
+		int count = 0;
+		for (int ndx = 0; ndx < ids.size(); ndx++) {
+			if (distanceSquared(store, id, ids.getInt(ndx)) == 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static long distanceSquared(EntityStore store, int one, int two) {
+		long x = store.x[one] - store.x[two];
+		long y = store.y[one] - store.y[two];
+		long z = store.z[one] - store.z[two];
+		return x*x + y*y + z*z;
+	}
+
+	/**
+	 * Take a random step along one axis, clamped to the volume.
+	 */
+	private static int step(int value, Random random) {
+		value += random.nextInt(2 * RADIUS + 1) - RADIUS;
+		return Math.min(Math.max(value, 0), DIMENSION);
+	}
+}
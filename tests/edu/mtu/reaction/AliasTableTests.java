@@ -0,0 +1,43 @@
+package edu.mtu.reaction;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests to ensure the alias table selects outcomes with the odds given.
+ */
+public class AliasTableTests {
+
+	/**
+	 * Test to make sure the frequency of each outcome matches its odds.
+	 */
+	@Test
+	public void frequencyTest() {
+		final int samples = 1000000;
+		double[] odds = new double[] { 0.1, 0.25, 0.05, 0.6 };
+		AliasTable table = new AliasTable(odds);
+
+		int[] counts = new int[odds.length];
+		Random random = new Random(42);
+		for (int ndx = 0; ndx < samples; ndx++) {
+			counts[table.select(random.nextDouble())]++;
+		}
+		for (int ndx = 0; ndx < odds.length; ndx++) {
+			Assert.assertEquals(odds[ndx], counts[ndx] / (double)samples, 0.002);
+		}
+	}
+
+	/**
+	 * Test to make sure an outcome with no odds is never selected, even at the ends of the range.
+	 */
+	@Test
+	public void impossibleTest() {
+		AliasTable table = new AliasTable(new double[] { 0.5, 0, 0.5 });
+		for (double value = 0; value < 1; value += 0.001) {
+			Assert.assertNotEquals(1, table.select(value));
+		}
+		Assert.assertNotEquals(1, table.select(1 - Math.ulp(1.0) / 2));
+	}
+}
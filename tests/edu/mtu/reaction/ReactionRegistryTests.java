@@ -2,11 +2,14 @@ package edu.mtu.reaction;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.mtu.compound.Molecule;
 import junit.framework.Assert;
 
 public class ReactionRegistryTests {
@@ -34,4 +37,97 @@ public class ReactionRegistryTests {
 		}
 		Assert.assertEquals(0, entities.size());
 	}
+	
+	/**
+	 * Test to ensure that the species ids are dense and agree with the descriptions.
+	 */
+	@Test
+	public void speciesIdTest() {
+		ReactionRegistry instance = ReactionRegistry.getInstance();
+		int count = instance.getSpeciesCount();
+		Assert.assertTrue(count >= expectedEntities.length);
+		
+		Set<Integer> seen = new HashSet<Integer>();
+		for (String formula : instance.getEntityList()) {
+			int id = instance.getSpeciesId(formula);
+			Assert.assertTrue(formula, id >= 0 && id < count);
+			Assert.assertTrue(formula, seen.add(id));
+			Assert.assertEquals(formula, instance.getSpecies(id));
+			
+			MoleculeDescription md = instance.getMoleculeDescription(id);
+			Assert.assertEquals(id, md.speciesId);
+			for (int partner : md.reactsWith) {
+				Assert.assertTrue(formula, partner >= 0 && partner < count);
+			}
+		}
+		Assert.assertEquals(ReactionRegistry.UNREGISTERED, instance.getSpeciesId("UNKNOWN"));
+	}
+	
+	/**
+	 * Test to ensure that the compiled reactions agree with a search of the reaction list, and
+	 * that the acceptance tables are sized for the radius.
+	 */
+	@Test
+	public void compiledReactionsTest() {
+		ReactionRegistry instance = ReactionRegistry.getInstance();
+		for (String formula : instance.getEntityList()) {
+			MoleculeDescription md = instance.getMoleculeDescription(formula);
+			if (!md.hasBimolecular) {
+				continue;
+			}
+			
+			Molecule molecule = new Molecule(formula);
+			for (int ndx = 0; ndx < md.reactsWith.length; ndx++) {
+				Molecule partner = new Molecule(instance.getSpecies(md.reactsWith[ndx]));
+				List<BasicReaction> expected = new ArrayList<BasicReaction>();
+				for (BasicReaction reaction : instance.getBimolecularReaction(formula)) {
+					if (reaction.checkReactants(molecule, partner) && reaction.getInteractionRadius() == md.interactionRadius[ndx]) {
+						expected.add(reaction);
+					}
+				}
+				
+				CompiledReactions compiled = md.reactions[ndx];
+				Assert.assertEquals(formula, expected.size(), compiled.reactions.length);
+				Assert.assertEquals(formula, expected.size() > 1, compiled.disproportionation);
+				for (int jdx = 0; jdx < expected.size(); jdx++) {
+					Assert.assertSame(formula, expected.get(jdx), compiled.reactions[jdx]);
+				}
+				Assert.assertNotNull(formula, instance.getBimolecularReactions(md.speciesId, md.reactsWith[ndx]));
+				
+				// The acceptance table must cover every squared distance in the radius
+				int radius = md.interactionRadius[ndx];
+				Assert.assertEquals(formula, radius * radius + 1, md.acceptance[ndx].length);
+			}
+		}
+	}
+	
+	/**
+	 * Test to ensure that the compiled products of each reaction agree with the formulas.
+	 */
+	@Test
+	public void productPlanTest() {
+		ReactionRegistry instance = ReactionRegistry.getInstance();
+		for (String formula : instance.getEntityList()) {
+			BasicReaction[] reactions = instance.getBimolecularReaction(formula);
+			if (reactions == null) {
+				continue;
+			}
+			for (BasicReaction reaction : reactions) {
+				ProductPlan plan = reaction.getProductPlan();
+				String[] products = reaction.getProducts();
+				Assert.assertEquals(products.length, plan.kinds.length);
+				for (int ndx = 0; ndx < products.length; ndx++) {
+					Assert.assertEquals(instance.getSpeciesId(products[ndx]), plan.speciesIds[ndx]);
+					if (products[ndx].equals("H2O")) {
+						Assert.assertEquals(ProductPlan.DISSOLVED, plan.kinds[ndx]);
+					} else if (instance.hasReactants(products[ndx])) {
+						Assert.assertEquals(ProductPlan.AGENT, plan.kinds[ndx]);
+						Assert.assertSame(instance.getMoleculeDescription(products[ndx]), plan.descriptions[ndx]);
+					} else {
+						Assert.assertEquals(ProductPlan.INERT, plan.kinds[ndx]);
+					}
+				}
+			}
+		}
+	}
 }
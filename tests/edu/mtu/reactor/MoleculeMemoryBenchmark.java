@@ -0,0 +1,64 @@
+package edu.mtu.reactor;
+
+import java.io.IOException;
+import java.util.Random;
+
+import edu.mtu.compound.Molecule;
+import edu.mtu.primitives.Sparse3DLattice;
+import edu.mtu.reaction.ReactionRegistry;
+
+/**
+ * Benchmark for the heap used by each molecule in the reactor, this is the
+ * molecule itself plus the space it takes up in the lattice. The reported
+ * figure is the growth of the used heap, after a collection, divided by the
+ * number of molecules added.
+ *
+ * Run with: java -Xmx4g -cp [classpath] edu.mtu.reactor.MoleculeMemoryBenchmark
+ */
+public class MoleculeMemoryBenchmark {
+
+	private final static String reactionsFileName = "tests/reactions.csv";
+
+	private final static int[] COUNTS = new int[] { 100000, 1000000, 5000000 };
+	private final static String[] FORMULAS = new String[] { "H2O2", "H2O", "CH3COCH3", "HO*" };
+
+	public static void main(String[] args) throws IOException {
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		registry.load(reactionsFileName);
+		int species = registry.getSpeciesCount();
+		int radius = registry.getMaxInteractionRadius();
+
+		System.out.println(String.format("%-10s %-15s", "Count", "Bytes/molecule"));
+		for (int count : COUNTS) {
+			Random random = new Random(42);
+			int dimension = (int)Math.ceil(Math.cbrt(count / (8e-5 * Reactor.AvogadrosNumber)) * 1e9);
+
+			// Note the heap before, the lattice is allocated for the count as the reactor does
+			long before = usedHeap();
+			Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(count, species, radius);
+			for (int ndx = 0; ndx < count; ndx++) {
+				Molecule molecule = new Molecule(FORMULAS[ndx % FORMULAS.length]);
+				lattice.add(molecule, random.nextInt(dimension), random.nextInt(dimension), random.nextInt(dimension));
+			}
+			long after = usedHeap();
+
+			System.out.println(String.format("%-10d %-15.1f", count, (after - before) / (double)count));
+
+			// Make sure the lattice is live until we have measured it
+			if (lattice.getStore().getCount() != count) {
+				throw new IllegalStateException("Lattice lost molecules.");
+			}
+		}
+	}
+
+	/**
+	 * Get the used heap after requesting a collection.
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int ndx = 0; ndx < 3; ndx++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
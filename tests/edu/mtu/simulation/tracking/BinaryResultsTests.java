@@ -0,0 +1,118 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.mtu.reaction.ReactionRegistry;
+
+/**
+ * Tests to ensure the binary results can be read back and exported to the same CSV
+ * files that would have been written otherwise.
+ */
+public class BinaryResultsTests {
+
+	private final static String reactionsFileName = "tests/reactions.csv";
+
+	// Enough reports to fill several chunks
+	private final static int REPORTS = 1000;
+	private final static double SCALING = 4.0;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		ReactionRegistry instance = ReactionRegistry.getInstance();
+		instance.clear();
+		instance.load(reactionsFileName);
+	}
+
+	/**
+	 * Test to make sure the plain rows can be read back and found by time.
+	 */
+	@Test
+	public void plainTest() throws IOException {
+		check(Tracker.BINARY);
+	}
+
+	/**
+	 * Test to make sure the compressed rows can be read back and found by time.
+	 */
+	@Test
+	public void deflateTest() throws IOException {
+		check(Tracker.BINARY_DEFLATE);
+	}
+
+	/**
+	 * Test to make sure the exported files match those written by the CSV tracker.
+	 */
+	@Test
+	public void exportTest() throws IOException {
+		String results = createFile(), molar = createFile();
+		run(results, molar, Tracker.CSV);
+		String binary = createFile(), exported = createFile(), exportedMolar = createFile();
+		run(binary, null, Tracker.BINARY_DEFLATE);
+		BinaryExporter.export(binary, exported, exportedMolar);
+
+		// The first line is the time the tracking started
+		assertSame(results, exported);
+		assertSame(molar, exportedMolar);
+	}
+
+	private static void check(int format) throws IOException {
+		String fileName = createFile();
+		run(fileName, null, format);
+
+		BinaryResultsReader reader = new BinaryResultsReader(fileName);
+		try {
+			Assert.assertEquals(format == Tracker.BINARY_DEFLATE, reader.isCompressed());
+			Assert.assertEquals(REPORTS, reader.getRowCount());
+			Assert.assertEquals(SCALING, reader.getMoleculeToMol(), 0);
+			int column = reader.getNames().indexOf("HO*");
+			long[] row = new long[reader.getColumns()];
+			for (int ndx = 0; ndx < REPORTS; ndx++) {
+				Assert.assertEquals(ndx * 0.5, reader.read(ndx, row), 0);
+				Assert.assertEquals(ndx + 1, row[column]);
+			}
+
+			// Find the rows by their time, including those between reports
+			Assert.assertEquals(0, reader.findRow(-1));
+			Assert.assertEquals(600, reader.findRow(300));
+			Assert.assertEquals(601, reader.findRow(300.25));
+			Assert.assertEquals(REPORTS, reader.findRow(REPORTS));
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Report the hydroxyl radical increasing by one every half second.
+	 */
+	private static void run(String fileName, String molar, int format) throws IOException {
+		TrackEnties tracker = new TrackEnties(fileName, true, format);
+		tracker.setMolarFile((molar == null) ? createFile() : molar, true, SCALING);
+		int speciesId = ReactionRegistry.getInstance().getSpeciesId("HO*");
+		for (int ndx = 0; ndx < REPORTS; ndx++) {
+			tracker.update(speciesId, 1);
+			tracker.reset(true, ndx * 0.5);
+		}
+		tracker.complete();
+	}
+
+	private static void assertSame(String expected, String actual) throws IOException {
+		List<String> one = Files.readAllLines(Paths.get(expected), StandardCharsets.UTF_8);
+		List<String> two = Files.readAllLines(Paths.get(actual), StandardCharsets.UTF_8);
+		Assert.assertEquals(one.subList(1, one.size()), two.subList(1, two.size()));
+	}
+
+	private static String createFile() throws IOException {
+		File file = File.createTempFile("binary", ".bin");
+		file.deleteOnExit();
+		return file.getAbsolutePath();
+	}
+}
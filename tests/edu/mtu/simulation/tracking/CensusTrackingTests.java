@@ -0,0 +1,75 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.mtu.primitives.Sparse3DLattice;
+import edu.mtu.reaction.ReactionRegistry;
+import edu.mtu.tests.TestEntity;
+
+/**
+ * Tests to ensure the census follows the reactor and that the recount finds drift.
+ */
+public class CensusTrackingTests {
+
+	private final static String reactionsFileName = "tests/reactions.csv";
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		ReactionRegistry instance = ReactionRegistry.getInstance();
+		instance.clear();
+		instance.load(reactionsFileName);
+	}
+
+	/**
+	 * Test to make sure a census that agrees with the tracker reports no drift.
+	 */
+	@Test
+	public void agreementTest() throws IOException {
+		Assert.assertEquals(0, run(3));
+	}
+
+	/**
+	 * Test to make sure a tracker that disagrees with the reactor is reported.
+	 */
+	@Test
+	public void driftTest() throws IOException {
+		Assert.assertEquals(1, run(2));
+	}
+
+	/**
+	 * Place three hydroxyl radicals in the reactor, removing one, and take the census
+	 * with the tracker reporting the count given.
+	 *
+	 * @return The number of recounts that found drift.
+	 */
+	private static int run(int tracked) throws IOException {
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		int speciesId = registry.getSpeciesId("HO*");
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(10, registry.getSpeciesCount(), registry.getMaxInteractionRadius());
+		CensusTracking census = new CensusTracking(createFile(), true, lattice, 1);
+		TrackEnties tracker = new TrackEnties(createFile(), true);
+
+		int id = lattice.add(new TestEntity(speciesId), 0, 0, 0);
+		for (int ndx = 0; ndx < 3; ndx++) {
+			lattice.add(new TestEntity(speciesId), ndx, 1, 0);
+		}
+		lattice.remove(id);
+		tracker.update(speciesId, tracked);
+
+		census.count(1, 1, tracker);
+		census.complete();
+		tracker.complete();
+		return census.getDrifts();
+	}
+
+	private static String createFile() throws IOException {
+		File file = File.createTempFile("census", ".csv");
+		file.deleteOnExit();
+		return file.getAbsolutePath();
+	}
+}
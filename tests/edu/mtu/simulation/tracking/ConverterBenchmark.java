@@ -0,0 +1,102 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Benchmark for the Converter. A results file of random counts is generated and
+ * converted using the line by line reader the Converter used to use and then the
+ * Converter itself, the throughput of each is reported in MB/s. As in our results,
+ * a third of the species change every report, a third change now and then, and the
+ * rest do not change at all.
+ *
+ * Run with: java -cp [classpath] edu.mtu.simulation.tracking.ConverterBenchmark [rows]
+ */
+public class ConverterBenchmark {
+
+	private final static int ROWS = 500000;
+	private final static int COLUMNS = 30;
+	private final static double SCALING = 86.05111436193098;
+
+	public static void main(String[] args) throws IOException {
+		int rows = (args.length > 0) ? Integer.parseInt(args[0]) : ROWS;
+		File source = File.createTempFile("results", ".csv");
+		File destination = File.createTempFile("molar", ".csv");
+		source.deleteOnExit();
+		destination.deleteOnExit();
+		generate(source, rows);
+		double megabytes = source.length() / 1e6;
+		System.out.println(String.format("%d rows of %d columns, %.1f MB", rows, COLUMNS, megabytes));
+
+		// Warm up, then time each of the conversions
+		System.out.println(String.format("%-15s %-15s", "Method", "MB/s"));
+		readerConvert(source.getPath(), destination.getPath());
+		long start = System.nanoTime();
+		readerConvert(source.getPath(), destination.getPath());
+		System.out.println(String.format("%-15s %-15.1f", "Reader", megabytes / ((System.nanoTime() - start) / 1e9)));
+
+		Converter.convert(source.getPath(), destination.getPath(), SCALING);
+		start = System.nanoTime();
+		Converter.convert(source.getPath(), destination.getPath(), SCALING);
+		System.out.println(String.format("%-15s %-15.1f", "Mapped", megabytes / ((System.nanoTime() - start) / 1e9)));
+	}
+
+	/**
+	 * Write a results file in the same format as the tracker.
+	 */
+	private static void generate(File file, int rows) throws IOException {
+		Random random = new Random(42);
+		long[] counts = new long[COLUMNS];
+		for (int ndx = 0; ndx < COLUMNS; ndx++) {
+			counts[ndx] = random.nextInt(1 << (ndx % 24));
+		}
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		writer.write("2017-01-01T00:00:00.000," + System.lineSeparator() + "Time,");
+		for (int ndx = 0; ndx < COLUMNS; ndx++) {
+			writer.write("S" + ndx + ",");
+		}
+		writer.write(System.lineSeparator());
+		for (int row = 0; row < rows; row++) {
+			writer.write((row * 60.0) + ",");
+			for (int ndx = 0; ndx < COLUMNS; ndx++) {
+				if (ndx % 3 == 0 || (ndx % 3 == 1 && random.nextInt(10) == 0)) {
+					counts[ndx] = random.nextInt(1 << (ndx % 24));
+				}
+				writer.write(counts[ndx] + ",");
+			}
+			writer.write(System.lineSeparator());
+		}
+		writer.write(System.lineSeparator());
+		writer.close();
+	}
+
+	/**
+	 * Convert the file line by line, as the Converter used to.
+	 */
+	private static void readerConvert(String source, String destination) throws IOException {
+		CSVReader reader = new CSVReader(new FileReader(source));
+		BufferedCsvWriter writer = new BufferedCsvWriter(destination);
+		writer.write(reader.readNext());
+		writer.write(reader.readNext());
+		String[] entries;
+		while ((entries = reader.readNext()) != null) {
+			writer.write(entries[0]);
+			for (int ndx = 1; ndx < entries.length; ndx++) {
+				if (entries[ndx].isEmpty()) {
+					continue;
+				}
+				writer.write(Double.parseDouble(entries[ndx]) / SCALING);
+			}
+			writer.newline();
+			writer.flush();
+		}
+		writer.close();
+		reader.close();
+	}
+}
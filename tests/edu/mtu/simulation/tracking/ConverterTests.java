@@ -0,0 +1,115 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Tests to ensure the Converter writes the same molar file as the line by line
+ * conversion it replaced.
+ */
+public class ConverterTests {
+
+	private final static int ROWS = 200;
+	private final static int COLUMNS = 6;
+	private final static double SCALING = 86.05111436193098;
+
+	/**
+	 * Test to make sure the output matches as rows cross window and segment boundaries,
+	 * counts repeat, census sentinels and large counts appear, and the file ends with
+	 * the blank line written by the tracker.
+	 */
+	@Test
+	public void convertTest() throws IOException {
+		String source = createFile(), expected = createFile(), actual = createFile();
+		generate(source);
+		readerConvert(source, expected);
+		byte[] bytes = Files.readAllBytes(Paths.get(expected));
+
+		int window = Converter.window, segment = Converter.segment;
+		try {
+			// A window smaller than a line needs to be grown, the others split rows
+			int[][] sizes = new int[][] { { window, segment }, { 16, 16 }, { 333, 50 }, { 4096, 100 }, { 4096, 1 } };
+			for (int[] size : sizes) {
+				Converter.window = size[0];
+				Converter.segment = size[1];
+				long read = Converter.convert(source, actual, SCALING);
+				Assert.assertEquals(new File(source).length(), read);
+				Assert.assertArrayEquals("window " + size[0] + ", segment " + size[1], bytes, Files.readAllBytes(Paths.get(actual)));
+			}
+		} finally {
+			Converter.window = window;
+			Converter.segment = segment;
+		}
+	}
+
+	/**
+	 * Write a results file in the same format as the tracker, with a census column of
+	 * sentinels and a column of counts too long to be converted exactly from a long.
+	 */
+	private static void generate(String fileName) throws IOException {
+		Random random = new Random(42);
+		long[] counts = new long[COLUMNS];
+		BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
+		writer.write("2017-01-01T00:00:00.000," + System.lineSeparator() + "Time,");
+		for (int ndx = 0; ndx < COLUMNS; ndx++) {
+			writer.write("S" + ndx + ",");
+		}
+		writer.write(System.lineSeparator());
+		for (int row = 0; row < ROWS; row++) {
+			writer.write((row * 60.0) + ",");
+			for (int ndx = 0; ndx < COLUMNS; ndx++) {
+				if (ndx == 1 || random.nextInt(4) == 0) {
+					counts[ndx] = random.nextInt(1 << (4 * ndx + 1));
+				}
+			}
+			counts[COLUMNS - 2] = -1;
+			counts[COLUMNS - 1] = 12345678901234567L + random.nextInt(3);
+			for (long count : counts) {
+				writer.write(count + ",");
+			}
+			writer.write(System.lineSeparator());
+		}
+		writer.write(System.lineSeparator());
+		writer.close();
+	}
+
+	/**
+	 * Convert the file line by line, as the Converter used to.
+	 */
+	private static void readerConvert(String source, String destination) throws IOException {
+		CSVReader reader = new CSVReader(new FileReader(source));
+		BufferedCsvWriter writer = new BufferedCsvWriter(destination);
+		writer.write(reader.readNext());
+		writer.write(reader.readNext());
+		String[] entries;
+		while ((entries = reader.readNext()) != null) {
+			writer.write(entries[0]);
+			for (int ndx = 1; ndx < entries.length; ndx++) {
+				if (entries[ndx].isEmpty()) {
+					continue;
+				}
+				writer.write(Double.parseDouble(entries[ndx]) / SCALING);
+			}
+			writer.newline();
+		}
+		writer.close();
+		reader.close();
+	}
+
+	private static String createFile() throws IOException {
+		File file = File.createTempFile("converter", ".csv");
+		file.deleteOnExit();
+		return file.getAbsolutePath();
+	}
+}
@@ -0,0 +1,118 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.mtu.primitives.Sparse3DLattice;
+import edu.mtu.reaction.ReactionRegistry;
+import edu.mtu.tests.TestEntity;
+
+/**
+ * Tests to ensure the spatial snapshots hold the molecules as they were when taken.
+ */
+public class SpatialSnapshotsTests {
+
+	private final static String reactionsFileName = "tests/reactions.csv";
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		ReactionRegistry instance = ReactionRegistry.getInstance();
+		instance.clear();
+		instance.load(reactionsFileName);
+	}
+
+	/**
+	 * Test to make sure the largest locations survive packing.
+	 */
+	@Test
+	public void packTest() {
+		final int max = (1 << 21) - 1;
+		Assert.assertArrayEquals(new int[] { max, 0, max }, SpatialSnapshots.unpack(SpatialSnapshots.pack(max, 0, max)));
+		Assert.assertArrayEquals(new int[] { 1, 2, 3 }, SpatialSnapshots.unpack(SpatialSnapshots.pack(1, 2, 3)));
+	}
+
+	/**
+	 * Test to make sure each snapshot has the live molecules where they were, and that
+	 * the steps between snapshots are skipped.
+	 */
+	@Test
+	public void snapshotTest() throws IOException {
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		int speciesId = registry.getSpeciesId("HO*");
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(10, registry.getSpeciesCount(), registry.getMaxInteractionRadius());
+		File file = File.createTempFile("snapshots", ".bin.gz");
+		file.deleteOnExit();
+
+		// Use a large budget so the interval stays put
+		SpatialSnapshots snapshots = new SpatialSnapshots(file.getPath(), lattice, new int[] { 10, 20, 30 }, 2, 1.0);
+		int one = lattice.add(new TestEntity(speciesId), 1, 2, 3);
+		int two = lattice.add(new TestEntity(speciesId), 4, 5, 6);
+		snapshots.snapshot(0, 0);
+		waitForWrite(snapshots, 1);
+		lattice.remove(one);
+		lattice.setObjectLocation(two, 7, 8, 9);
+		snapshots.snapshot(1, 1);
+		snapshots.snapshot(2, 2);
+		snapshots.complete();
+		Assert.assertEquals(2, snapshots.getWritten());
+
+		ByteBuffer buffer = read(file);
+		Assert.assertEquals(SpatialSnapshots.MAGIC, buffer.getInt());
+		Assert.assertEquals(SpatialSnapshots.VERSION, buffer.getInt());
+		Assert.assertEquals(10, buffer.getInt());
+		Assert.assertEquals(20, buffer.getInt());
+		Assert.assertEquals(30, buffer.getInt());
+		Assert.assertEquals(registry.getSpeciesCount(), buffer.getInt());
+		for (int ndx = 0; ndx < registry.getSpeciesCount(); ndx++) {
+			buffer.position(buffer.getInt() + buffer.position());
+		}
+
+		// The first snapshot has both molecules
+		Assert.assertEquals(0, buffer.getInt());
+		Assert.assertEquals(0, buffer.getDouble(), 0);
+		Assert.assertEquals(2, buffer.getInt());
+		Assert.assertEquals(speciesId, buffer.getInt());
+		Assert.assertEquals(speciesId, buffer.getInt());
+		Assert.assertArrayEquals(new int[] { 1, 2, 3 }, SpatialSnapshots.unpack(buffer.getLong()));
+		Assert.assertArrayEquals(new int[] { 4, 5, 6 }, SpatialSnapshots.unpack(buffer.getLong()));
+
+		// The second only has the one that moved
+		Assert.assertEquals(2, buffer.getInt());
+		Assert.assertEquals(2, buffer.getDouble(), 0);
+		Assert.assertEquals(1, buffer.getInt());
+		Assert.assertEquals(speciesId, buffer.getInt());
+		Assert.assertArrayEquals(new int[] { 7, 8, 9 }, SpatialSnapshots.unpack(buffer.getLong()));
+		Assert.assertFalse(buffer.hasRemaining());
+	}
+
+	/**
+	 * Wait for the background thread so the next snapshot isn't skipped.
+	 */
+	private static void waitForWrite(SpatialSnapshots snapshots, int written) {
+		while (snapshots.getWritten() < written) {
+			Thread.yield();
+		}
+	}
+
+	private static ByteBuffer read(File file) throws IOException {
+		InputStream in = new GZIPInputStream(new FileInputStream(file));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] bytes = new byte[4096];
+		int read;
+		while ((read = in.read(bytes)) != -1) {
+			out.write(bytes, 0, read);
+		}
+		in.close();
+		return ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
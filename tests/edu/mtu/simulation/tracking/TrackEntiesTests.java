@@ -0,0 +1,176 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.mtu.reaction.ReactionRegistry;
+
+/**
+ * Tests to ensure the trackers keep exact counts, including when they are updated
+ * from several threads.
+ */
+public class TrackEntiesTests {
+
+	private final static String reactionsFileName = "tests/reactions.csv";
+
+	private final static int THREADS = 8;
+	private final static int UPDATES = 100000;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		ReactionRegistry instance = ReactionRegistry.getInstance();
+		instance.clear();
+		instance.load(reactionsFileName);
+	}
+
+	/**
+	 * Test to make sure the formula and species id methods agree.
+	 */
+	@Test
+	public void formulaTest() throws IOException {
+		TrackEnties tracker = new TrackEnties(createFile(), true);
+		int speciesId = ReactionRegistry.getInstance().getSpeciesId("HO*");
+		tracker.update("HO*", 5);
+		tracker.update(speciesId, -2);
+		Assert.assertEquals(3, tracker.getCount("HO*"));
+		Assert.assertEquals(3, tracker.getCount(speciesId));
+
+		// Unknown formulas are ignored
+		tracker.update("XYZ", 1);
+		Assert.assertEquals(0, tracker.getCount("XYZ"));
+
+		tracker.zero("HO*");
+		Assert.assertEquals(0, tracker.getCount(speciesId));
+		tracker.complete();
+	}
+
+	/**
+	 * Test to make sure more reports than the writer holds are all written, in order,
+	 * along with the molar concentrations.
+	 */
+	@Test
+	public void writerTest() throws IOException {
+		final int reports = AsyncResultsWriter.SLOTS * 4;
+		String results = createFile(), molar = createFile();
+		TrackEnties tracker = new TrackEnties(results, true);
+		tracker.setMolarFile(molar, true, 2.0);
+		int speciesId = ReactionRegistry.getInstance().getSpeciesId("HO*");
+		for (int ndx = 0; ndx < reports; ndx++) {
+			tracker.update(speciesId, 1);
+			tracker.reset(true, ndx);
+		}
+		tracker.complete();
+
+		// Find the column of the species and check each row
+		List<String> lines = Files.readAllLines(Paths.get(results), StandardCharsets.UTF_8);
+		List<String> mols = Files.readAllLines(Paths.get(molar), StandardCharsets.UTF_8);
+		Assert.assertEquals(reports + 3, lines.size());
+		checkHeader(lines);
+		checkHeader(mols);
+		int column = Arrays.asList(lines.get(1).split(",")).indexOf("HO*");
+		for (int ndx = 0; ndx < reports; ndx++) {
+			String[] cells = lines.get(ndx + 2).split(",");
+			Assert.assertEquals((double)ndx, Double.parseDouble(cells[0]), 0);
+			Assert.assertEquals(ndx + 1, Long.parseLong(cells[column]));
+			Assert.assertEquals((ndx + 1) / 2.0, Double.parseDouble(mols.get(ndx + 2).split(",")[column]), 0);
+		}
+	}
+
+	/**
+	 * Test to make sure an existing file is replaced, as the CSV writer did, even when
+	 * it is not to be overwritten.
+	 */
+	@Test
+	public void replaceTest() throws IOException {
+		String results = createFile();
+		Files.write(Paths.get(results), Arrays.asList("stale", "stale"), StandardCharsets.UTF_8);
+		TrackEnties tracker = new TrackEnties(results, false);
+		tracker.reset(true, 0);
+		tracker.complete();
+
+		List<String> lines = Files.readAllLines(Paths.get(results), StandardCharsets.UTF_8);
+		Assert.assertEquals(4, lines.size());
+		checkHeader(lines);
+	}
+
+	/**
+	 * Check the header has the layout the tracker wrote with the CSV writer, the start
+	 * time followed by a comma, then the time column and the sorted species.
+	 */
+	private static void checkHeader(List<String> lines) throws IOException {
+		String started = lines.get(0);
+		Assert.assertTrue(started, started.endsWith(","));
+		LocalDateTime.parse(started.substring(0, started.length() - 1));
+
+		List<String> entities = new ArrayList<String>(ReactionRegistry.getInstance().getEntityList());
+		entities.remove("UV");
+		Collections.sort(entities);
+		String fileName = createFile();
+		BufferedCsvWriter writer = new BufferedCsvWriter(fileName, true);
+		writer.write("Time");
+		writer.write(entities);
+		writer.close();
+		Assert.assertEquals(Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8).get(0), lines.get(1));
+	}
+
+	/**
+	 * Test to make sure the adder variant is exact when updated concurrently.
+	 */
+	@Test
+	public void adderTest() throws Exception {
+		check(new AdderTrackEnties(createFile(), true));
+	}
+
+	/**
+	 * Test to make sure the striped variant is exact when updated concurrently.
+	 */
+	@Test
+	public void stripedTest() throws Exception {
+		check(new StripedTrackEnties(createFile(), true));
+	}
+
+	/**
+	 * Have each thread add to one species and remove from another, the totals must match.
+	 */
+	private static void check(final TrackEnties tracker) throws InterruptedException {
+		final int one = ReactionRegistry.getInstance().getSpeciesId("HO*");
+		final int two = ReactionRegistry.getInstance().getSpeciesId("H2O2");
+		Thread[] threads = new Thread[THREADS];
+		for (int ndx = 0; ndx < THREADS; ndx++) {
+			threads[ndx] = new Thread() {
+				@Override
+				public void run() {
+					for (int count = 0; count < UPDATES; count++) {
+						tracker.update(one, 1);
+						tracker.update(two, -1);
+					}
+				}
+			};
+			threads[ndx].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals((long)THREADS * UPDATES, tracker.getCount(one));
+		Assert.assertEquals(-(long)THREADS * UPDATES, tracker.getCount(two));
+		tracker.complete();
+	}
+
+	private static String createFile() throws IOException {
+		File file = File.createTempFile("tracker", ".csv");
+		file.deleteOnExit();
+		return file.getAbsolutePath();
+	}
+}
@@ -0,0 +1,123 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import edu.mtu.primitives.EntityStore;
+import edu.mtu.primitives.Sparse3DLattice;
+import edu.mtu.reaction.ReactionRegistry;
+import edu.mtu.reactor.Reactor;
+import edu.mtu.tests.TestEntity;
+
+/**
+ * Benchmark for the voxel fields. The lattice is filled and scaled as it is by the
+ * reactor, then every entity is moved once per step with and without the fields
+ * listening, the difference is the cost of keeping the fields. The cost of a dump
+ * on the simulation thread, which is only a copy of the counts when the last dump has
+ * been written, is also reported.
+ *
+ * Run with: java -cp [classpath] edu.mtu.simulation.tracking.VoxelFieldsBenchmark
+ */
+public class VoxelFieldsBenchmark {
+
+	private final static String reactionsFileName = "tests/reactions.csv";
+
+	private final static int[] COUNTS = new int[] { 10000, 100000, 1000000 };
+	private final static int RADIUS = 308;
+	private final static int STEP = 590;
+	private final static int STEPS = 5;
+	private final static int DUMPS = 20;
+	private final static int WAIT = 100;
+
+	public static void main(String[] args) throws IOException {
+		ReactionRegistry.getInstance().load(reactionsFileName);
+		System.out.println(String.format("%-10s %-15s %-15s %-15s %-15s %-15s", "Count", "Move (ns/op)", "Fields (ns/op)", "Step (ms)", "Overhead (ms)", "Dump (us)"));
+		for (int count : COUNTS) {
+			run(count, (int)Math.ceil(Math.cbrt(count / (8e-5 * Reactor.AvogadrosNumber)) * 1e9));
+		}
+	}
+
+	/**
+	 * Fill a lattice with and without the fields and print the timings.
+	 */
+	private static void run(int count, int dimension) throws IOException {
+		int tags = ReactionRegistry.getInstance().getSpeciesCount();
+		Sparse3DLattice plain = fill(count, dimension, tags);
+		Sparse3DLattice listened = fill(count, dimension, tags);
+		File file = File.createTempFile("voxels", ".bin.gz");
+		file.deleteOnExit();
+		VoxelFields fields = new VoxelFields(file.getPath(), listened, new int[] { dimension, dimension, dimension }, VoxelFields.DEFAULT_RESOLUTION);
+
+		// Warm up, then time the steps alternating which lattice goes first
+		Random random = new Random(42);
+		for (int step = 0; step < STEPS; step++) {
+			move(plain, dimension, random);
+			move(listened, dimension, random);
+		}
+		double without = 0, with = 0;
+		for (int step = 0; step < STEPS * 2; step++) {
+			if (step % 2 == 0) {
+				without += move(plain, dimension, random);
+				with += move(listened, dimension, random);
+			} else {
+				with += move(listened, dimension, random);
+				without += move(plain, dimension, random);
+			}
+		}
+		without /= STEPS * 2;
+		with /= STEPS * 2;
+
+		// Time the dumps, in a run the last dump is written between reports so give
+		// the writer time to finish before each one
+		long dumping = 0;
+		for (int ndx = 0; ndx < DUMPS; ndx++) {
+			try {
+				Thread.sleep(WAIT);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			long start = System.nanoTime();
+			fields.dump(ndx);
+			dumping += System.nanoTime() - start;
+		}
+		double dump = dumping / 1e3 / DUMPS;
+		fields.complete();
+
+		System.out.println(String.format("%-10d %-15.1f %-15.1f %-15.2f %-15.2f %-15.1f", count, without, with,
+				with * count / 1e6, (with - without) * count / 1e6, dump));
+	}
+
+	private static Sparse3DLattice fill(int count, int dimension, int tags) {
+		Random random = new Random(42);
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(count, tags, RADIUS);
+		for (int ndx = 0; ndx < count; ndx++) {
+			lattice.add(new TestEntity(ndx % tags), random.nextInt(dimension), random.nextInt(dimension), random.nextInt(dimension));
+		}
+		return lattice;
+	}
+
+	/**
+	 * Move every entity by a random step, return the average time for each in nanoseconds.
+	 */
+	private static double move(Sparse3DLattice lattice, int dimension, Random random) {
+		EntityStore store = lattice.getStore();
+		int count = store.getHighWater();
+		long start = System.nanoTime();
+		for (int id = 0; id < count; id++) {
+			int x = step(store.x[id], dimension, random);
+			int y = step(store.y[id], dimension, random);
+			int z = step(store.z[id], dimension, random);
+			lattice.setObjectLocation(id, x, y, z);
+		}
+		return (System.nanoTime() - start) / (double)count;
+	}
+
+	/**
+	 * Take a random step along one axis, clamped to the reactor.
+	 */
+	private static int step(int value, int dimension, Random random) {
+		value += random.nextInt(2 * STEP + 1) - STEP;
+		return Math.min(Math.max(value, 0), dimension);
+	}
+}
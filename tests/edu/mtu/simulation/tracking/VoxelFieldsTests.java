@@ -0,0 +1,138 @@
+package edu.mtu.simulation.tracking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.mtu.primitives.EntityStore;
+import edu.mtu.primitives.Sparse3DLattice;
+import edu.mtu.reaction.ReactionRegistry;
+import edu.mtu.tests.TestEntity;
+
+/**
+ * Tests to ensure the voxel fields follow the molecules as they are added, moved, and
+ * removed, and that the dumps hold the counts.
+ */
+public class VoxelFieldsTests {
+
+	private final static String reactionsFileName = "tests/reactions.csv";
+
+	private final static int DIMENSION = 100;
+	private final static int RESOLUTION = 4;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		ReactionRegistry instance = ReactionRegistry.getInstance();
+		instance.clear();
+		instance.load(reactionsFileName);
+	}
+
+	/**
+	 * Test to make sure the locations on the walls are in the outer voxels.
+	 */
+	@Test
+	public void voxelTest() throws IOException {
+		VoxelFields fields = create(createFile());
+		Assert.assertEquals(0, fields.getVoxel(0, 0, 0));
+		Assert.assertEquals(1, fields.getVoxel(0, 0, 25));
+		Assert.assertEquals(RESOLUTION, fields.getVoxel(0, 25, 24));
+		Assert.assertEquals(RESOLUTION * RESOLUTION * RESOLUTION - 1, fields.getVoxel(DIMENSION, DIMENSION, DIMENSION));
+		fields.complete();
+	}
+
+	/**
+	 * Test to make sure the counts match a recount as molecules move about.
+	 */
+	@Test
+	public void fieldTest() throws IOException {
+		final int count = 500, tags = ReactionRegistry.getInstance().getSpeciesCount();
+		Random random = new Random(42);
+		File file = createFile();
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(count, tags, ReactionRegistry.getInstance().getMaxInteractionRadius());
+		VoxelFields fields = new VoxelFields(file.getPath(), lattice, new int[] { DIMENSION, DIMENSION, DIMENSION }, RESOLUTION);
+		fields.setMoleculeToMol(2.0);
+		int[] ids = new int[count];
+		for (int ndx = 0; ndx < count; ndx++) {
+			ids[ndx] = lattice.add(new TestEntity(ndx % tags), random.nextInt(DIMENSION), random.nextInt(DIMENSION), random.nextInt(DIMENSION));
+		}
+		for (int round = 0; round < 5; round++) {
+			for (int id : ids) {
+				if (lattice.getStore().isAlive(id)) {
+					lattice.setObjectLocation(id, random.nextInt(DIMENSION), random.nextInt(DIMENSION), random.nextInt(DIMENSION));
+				}
+			}
+			lattice.remove(ids[round]);
+			fields.dump(round);
+		}
+		int[] expected = recount(lattice, fields, tags);
+		for (int ndx = 0; ndx < expected.length; ndx++) {
+			Assert.assertEquals(expected[ndx], fields.getCount(ndx / (RESOLUTION * RESOLUTION * RESOLUTION), ndx % (RESOLUTION * RESOLUTION * RESOLUTION)));
+		}
+		fields.complete();
+		Assert.assertEquals(5, fields.getDumps());
+
+		// Read the header and skip to the last dump, which should match the recount
+		ByteBuffer buffer = read(file);
+		Assert.assertEquals(VoxelFields.MAGIC, buffer.getInt());
+		Assert.assertEquals(VoxelFields.VERSION, buffer.getInt());
+		Assert.assertEquals(RESOLUTION, buffer.getInt());
+		buffer.position(buffer.position() + 12);
+		Assert.assertEquals(2.0, buffer.getDouble(), 0);
+		Assert.assertEquals(tags, buffer.getInt());
+		for (int ndx = 0; ndx < tags; ndx++) {
+			buffer.position(buffer.getInt() + buffer.position());
+		}
+		buffer.position(buffer.position() + 4 * (8 + expected.length * 4));
+		Assert.assertEquals(4, buffer.getDouble(), 0);
+		for (int ndx = 0; ndx < expected.length; ndx++) {
+			Assert.assertEquals(expected[ndx], buffer.getInt());
+		}
+		Assert.assertFalse(buffer.hasRemaining());
+	}
+
+	private static int[] recount(Sparse3DLattice lattice, VoxelFields fields, int tags) {
+		final int voxels = RESOLUTION * RESOLUTION * RESOLUTION;
+		int[] counts = new int[tags * voxels];
+		EntityStore store = lattice.getStore();
+		for (int id = 0; id < store.getHighWater(); id++) {
+			if (store.isAlive(id)) {
+				counts[store.tag[id] * voxels + fields.getVoxel(store.x[id], store.y[id], store.z[id])]++;
+			}
+		}
+		return counts;
+	}
+
+	private static VoxelFields create(File file) {
+		ReactionRegistry registry = ReactionRegistry.getInstance();
+		Sparse3DLattice lattice = Sparse3DLattice.create3DLattice(10, registry.getSpeciesCount(), registry.getMaxInteractionRadius());
+		return new VoxelFields(file.getPath(), lattice, new int[] { DIMENSION, DIMENSION, DIMENSION }, RESOLUTION);
+	}
+
+	private static File createFile() throws IOException {
+		File file = File.createTempFile("voxels", ".bin.gz");
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static ByteBuffer read(File file) throws IOException {
+		InputStream in = new GZIPInputStream(new FileInputStream(file));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] bytes = new byte[4096];
+		int read;
+		while ((read = in.read(bytes)) != -1) {
+			out.write(bytes, 0, read);
+		}
+		in.close();
+		return ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -0,0 +1,31 @@
+package edu.mtu.tests;
+
+import edu.mtu.primitives.Entity;
+import edu.mtu.primitives.EntityStore;
+
+/**
+ * Minimal entity for exercising the lattice without the rest of the model.
+ */
+public class TestEntity implements Entity {
+	private int tag;
+	private int id = EntityStore.NONE;
+
+	public TestEntity(int tag) {
+		this.tag = tag;
+	}
+
+	@Override
+	public int getEntityTypeTag() {
+		return tag;
+	}
+
+	@Override
+	public int getEntityId() {
+		return id;
+	}
+
+	@Override
+	public void setEntityId(int id) {
+		this.id = id;
+	}
+}